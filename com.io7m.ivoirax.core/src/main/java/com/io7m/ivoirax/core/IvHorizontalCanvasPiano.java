@@ -0,0 +1,742 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import com.io7m.ivoirax.core.internal.IvKeyGeometry;
+import com.io7m.ivoirax.core.internal.IvKeyPointerTargetType;
+import com.io7m.ivoirax.core.internal.IvKeyPointerTracker;
+import com.io7m.ivoirax.core.internal.IvPianoKeys;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.layout.Region;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.IntConsumer;
+
+/**
+ * A horizontal piano that renders the entire keyboard into a single
+ * {@link Canvas}. This is observably equivalent to {@link IvHorizontalPiano},
+ * but adds only one node to the scene graph regardless of the number of keys.
+ */
+
+public final class IvHorizontalCanvasPiano
+  extends Region
+  implements IvPianoType
+{
+  private static final int KEY_COUNT_DEFAULT = (12 * 12) + 1;
+
+  private IvPianoTheme themeApplied;
+  private boolean repaintAll;
+  private boolean repaintPending;
+  private final BitSet keysDirty;
+  private final Canvas canvas;
+  private final IvKeyPointerTracker pointer;
+  private final DoubleBinding accidentalKeyHeight;
+  private final DoubleBinding accidentalKeyWidth;
+  private final IvPianoKeys pianoKeys;
+  private final ReadOnlyDoubleProperty naturalKeyHeight;
+  private final SimpleDoubleProperty naturalKeyWidth;
+  private final SimpleObjectProperty<Font> keyFont;
+  private final SimpleObjectProperty<IvPianoTheme> theme;
+  private final String[] labels;
+  private final int keyCount;
+  private final int naturalCount;
+
+  /**
+   * A horizontal piano.
+   */
+
+  public IvHorizontalCanvasPiano()
+  {
+    this(KEY_COUNT_DEFAULT);
+  }
+
+  /**
+   * A horizontal piano.
+   *
+   * @param inKeyCount The number of keyboard keys
+   */
+
+  public IvHorizontalCanvasPiano(
+    final int inKeyCount)
+  {
+    if (inKeyCount <= 0) {
+      throw new IllegalArgumentException("Key count must be positive.");
+    }
+
+    this.keyCount =
+      inKeyCount;
+    this.naturalCount =
+      IvKeyGeometry.naturalCount(inKeyCount);
+    this.pianoKeys =
+      new IvPianoKeys(this, inKeyCount, this::onKeyPressedChanged);
+    this.keysDirty =
+      new BitSet(inKeyCount);
+
+    this.labels = new String[((this.keyCount - 1) / 12) + 1];
+    for (int octave = 0; octave < this.labels.length; ++octave) {
+      this.labels[octave] = "C%d".formatted(octave);
+    }
+
+    this.keyFont =
+      new SimpleObjectProperty<>(Font.font("Monospaced", FontWeight.BOLD, 9.0));
+    this.themeApplied =
+      IvPianoTheme.defaultTheme();
+    this.theme =
+      new SimpleObjectProperty<>(this.themeApplied);
+    this.theme.addListener(observable -> this.themeUpdate());
+    this.keyFont.addListener(observable -> this.markDirtyAll());
+
+    this.naturalKeyWidth =
+      new SimpleDoubleProperty(24.0);
+    this.accidentalKeyWidth =
+      this.naturalKeyWidth.divide(2.0);
+    this.naturalKeyHeight =
+      this.heightProperty();
+    this.accidentalKeyHeight =
+      this.naturalKeyHeight.divide(3.0)
+        .multiply(2.0);
+
+    this.canvas = new Canvas();
+    this.canvas.setManaged(false);
+    this.getChildren().add(this.canvas);
+
+    this.naturalKeyWidthProperty()
+      .addListener((observable, oldValue, newValue) -> {
+        this.requestLayout();
+        this.markDirtyAll();
+      });
+
+    this.pointer =
+      IvKeyPointerTracker.install(this, new PointerTarget());
+  }
+
+  private void onKeyHoverChanged(
+    final int previous,
+    final int index)
+  {
+    if (previous != -1) {
+      this.markDirty(previous);
+      this.pianoKeys.exit(previous);
+    }
+    if (index != -1) {
+      this.markDirty(index);
+      this.pianoKeys.enter(index);
+    }
+  }
+
+  @Override
+  protected double computePrefWidth(
+    final double height)
+  {
+    return this.naturalCount * this.naturalKeyWidth.get();
+  }
+
+  @Override
+  protected void layoutChildren()
+  {
+    final var width = this.getWidth();
+    final var height = this.getHeight();
+    if (this.canvas.getWidth() != width || this.canvas.getHeight() != height) {
+      this.canvas.setWidth(width);
+      this.canvas.setHeight(height);
+      this.repaintAll = true;
+    }
+    this.repaint();
+  }
+
+  private void markDirty(
+    final int index)
+  {
+    this.keysDirty.set(index);
+    this.scheduleRepaint();
+  }
+
+  private void themeUpdate()
+  {
+    this.themeApplied =
+      Objects.requireNonNullElse(this.theme.get(), IvPianoTheme.defaultTheme());
+    this.markDirtyAll();
+  }
+
+  private void markDirtyAll()
+  {
+    this.repaintAll = true;
+    this.scheduleRepaint();
+  }
+
+  /**
+   * Repaints are deferred to the next layout pass so that any number of
+   * changes made within a single pulse are painted exactly once. Only this
+   * region is marked as needing layout; the parents are not asked to lay
+   * themselves out again.
+   */
+
+  private void scheduleRepaint()
+  {
+    if (!this.repaintPending) {
+      this.repaintPending = true;
+      this.setNeedsLayout(true);
+    }
+  }
+
+  /**
+   * Repaint the keys that have changed since the last repaint. Painting a
+   * natural key paints over the edges of the accidental keys on either side
+   * of it, and so those accidental keys are painted again afterwards.
+   */
+
+  private void repaint()
+  {
+    this.repaintPending = false;
+
+    if (this.repaintAll) {
+      this.repaintAll = false;
+      this.keysDirty.clear();
+      this.redraw();
+      return;
+    }
+
+    if (this.keysDirty.isEmpty()) {
+      return;
+    }
+
+    this.configureGraphics();
+
+    final var dirty = this.keysDirty;
+    for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+      if (!IvKeyGeometry.isAccidental(i)) {
+        this.drawKey(i);
+        if (i > 0 && IvKeyGeometry.isAccidental(i - 1)) {
+          dirty.set(i - 1);
+        }
+        if (i + 1 < this.keyCount && IvKeyGeometry.isAccidental(i + 1)) {
+          dirty.set(i + 1);
+        }
+      }
+    }
+    for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+      if (IvKeyGeometry.isAccidental(i)) {
+        this.drawKey(i);
+      }
+    }
+    dirty.clear();
+  }
+
+  private void redraw()
+  {
+    final var g = this.canvas.getGraphicsContext2D();
+    g.clearRect(0.0, 0.0, this.canvas.getWidth(), this.canvas.getHeight());
+    this.configureGraphics();
+
+    for (int ordinal = 0; ordinal < this.naturalCount; ++ordinal) {
+      this.drawKey(IvKeyGeometry.naturalIndex(ordinal));
+    }
+    for (int index = 0; index < this.keyCount; ++index) {
+      if (IvKeyGeometry.isAccidental(index)) {
+        this.drawKey(index);
+      }
+    }
+  }
+
+  private void configureGraphics()
+  {
+    final var g = this.canvas.getGraphicsContext2D();
+    g.setLineWidth(1.0);
+    g.setFont(this.keyFont.get());
+    g.setTextAlign(TextAlignment.CENTER);
+    g.setTextBaseline(VPos.BOTTOM);
+  }
+
+  private void drawKey(
+    final int index)
+  {
+    if (IvKeyGeometry.isAccidental(index)) {
+      this.drawAccidental(index);
+    } else {
+      this.drawNatural(index);
+    }
+  }
+
+  /**
+   * Draw an accidental key. The accidental's bounds are cleared and the
+   * underlying strips of the neighbouring natural keys are painted again
+   * (clipped to those bounds) before the accidental itself is filled, so
+   * that translucent accidental colors do not accumulate across repaints.
+   */
+
+  private void drawAccidental(
+    final int index)
+  {
+    final var g =
+      this.canvas.getGraphicsContext2D();
+    final var x =
+      IvKeyGeometry.horizontalXOf(index, this.naturalKeyWidth.get());
+    final var pressed =
+      this.pianoKeys.keyIsPressed(index);
+    final var hovered =
+      this.pointer.keyHovered() == index;
+
+    final var w = this.accidentalKeyWidth.get();
+    final var h = this.accidentalKeyHeight.get();
+
+    g.save();
+    g.beginPath();
+    g.rect(x, 0.0, w, h);
+    g.closePath();
+    g.clip();
+    g.clearRect(x, 0.0, w, h);
+    if (index > 0) {
+      this.paintNatural(index - 1);
+    }
+    if (index + 1 < this.keyCount) {
+      this.paintNatural(index + 1);
+    }
+    g.restore();
+
+    if (pressed) {
+      g.setFill(this.themeApplied.colorKeyAccidentalPressed());
+    } else if (hovered) {
+      g.setFill(this.themeApplied.colorKeyAccidentalOver());
+    } else {
+      g.setFill(this.themeApplied.colorKeyAccidental());
+    }
+    g.fillRect(x, 0.0, w, h);
+    g.setStroke(this.themeApplied.colorStrokeKeyAccidental());
+    g.strokeRect(x + 0.5, 0.5, w - 1.0, h - 1.0);
+  }
+
+  private void drawNatural(
+    final int index)
+  {
+    final var g =
+      this.canvas.getGraphicsContext2D();
+    final var x =
+      IvKeyGeometry.horizontalXOf(index, this.naturalKeyWidth.get());
+    final var w = this.naturalKeyWidth.get();
+    final var h = this.getHeight();
+
+    g.clearRect(x, 0.0, w, h);
+    this.paintNatural(index);
+  }
+
+  private void paintNatural(
+    final int index)
+  {
+    final var g =
+      this.canvas.getGraphicsContext2D();
+    final var x =
+      IvKeyGeometry.horizontalXOf(index, this.naturalKeyWidth.get());
+    final var pressed =
+      this.pianoKeys.keyIsPressed(index);
+    final var hovered =
+      this.pointer.keyHovered() == index;
+
+    final var w = this.naturalKeyWidth.get();
+    final var h = this.getHeight();
+
+    if (pressed) {
+      g.setFill(this.themeApplied.colorKeyNaturalPressed());
+    } else if (hovered) {
+      g.setFill(this.themeApplied.colorKeyNaturalOver());
+    } else {
+      g.setFill(this.themeApplied.colorKeyNatural());
+    }
+    g.fillRect(x, 0.0, w, h);
+    g.setStroke(this.themeApplied.colorStrokeKeyNatural());
+    g.strokeRect(x + 0.5, 0.5, w - 1.0, h - 1.0);
+
+    if (index % 12 == 0) {
+      g.setFill(this.themeApplied.colorKeyText());
+      g.fillText(this.labels[index / 12], x + (w / 2.0), h, w);
+    }
+  }
+
+  /**
+   * @return The current height of accidental keys
+   */
+
+  public double accidentalKeyHeight()
+  {
+    return this.accidentalKeyHeightProperty().get();
+  }
+
+  /**
+   * @return The height of accidental keys
+   */
+
+  public DoubleExpression accidentalKeyHeightProperty()
+  {
+    return this.accidentalKeyHeight;
+  }
+
+  /**
+   * @return The current width of accidental keys
+   */
+
+  public double accidentalKeyWidth()
+  {
+    return this.accidentalKeyWidthProperty().get();
+  }
+
+  /**
+   * @return The width of accidental keys
+   */
+
+  public DoubleExpression accidentalKeyWidthProperty()
+  {
+    return this.accidentalKeyWidth;
+  }
+
+  @Override
+  public SimpleObjectProperty<IvPianoTheme> themeProperty()
+  {
+    return this.theme;
+  }
+
+  @Override
+  public int keyCount()
+  {
+    return this.keyCount;
+  }
+
+  /**
+   * @return The current height of natural keys
+   */
+
+  public double naturalKeyHeight()
+  {
+    return this.naturalKeyHeightProperty().get();
+  }
+
+  /**
+   * @return The height of natural keys
+   */
+
+  public ReadOnlyDoubleProperty naturalKeyHeightProperty()
+  {
+    return this.naturalKeyHeight;
+  }
+
+  /**
+   * @return The current width of natural keys
+   */
+
+  public double naturalKeyWidth()
+  {
+    return this.naturalKeyWidthProperty().get();
+  }
+
+  /**
+   * @return The width of natural keys
+   */
+
+  public SimpleDoubleProperty naturalKeyWidthProperty()
+  {
+    return this.naturalKeyWidth;
+  }
+
+  @Override
+  public void setOnKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    this.pianoKeys.setOnKeyEventHandler(handler);
+  }
+
+  @Override
+  public void setOnKeyEventHandler(
+    final IvKeyEventHandlerType handler,
+    final Executor executor)
+  {
+    this.pianoKeys.setOnKeyEventHandler(handler, executor);
+  }
+
+  @Override
+  public void setOnKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    this.pianoKeys.setOnKeyEventListener(listener);
+  }
+
+  @Override
+  public void setOnKeyEventListener(
+    final IvKeyEventListenerType listener,
+    final Set<IvKeyEventKind> kinds)
+  {
+    this.pianoKeys.setOnKeyEventListener(listener, kinds);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    return this.pianoKeys.addKeyEventHandler(handler);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventHandler(
+    final IvKeyEventHandlerType handler,
+    final Set<IvKeyEventKind> kinds)
+  {
+    return this.pianoKeys.addKeyEventHandler(handler, kinds);
+  }
+
+  @Override
+  public void removeKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    this.pianoKeys.removeKeyEventHandler(handler);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    return this.pianoKeys.addKeyEventListener(listener);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventListener(
+    final IvKeyEventListenerType listener,
+    final Set<IvKeyEventKind> kinds)
+  {
+    return this.pianoKeys.addKeyEventListener(listener, kinds);
+  }
+
+  @Override
+  public void removeKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    this.pianoKeys.removeKeyEventListener(listener);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventBatchListener(
+    final IvKeyEventBatchListenerType listener)
+  {
+    return this.pianoKeys.addKeyEventBatchListener(listener);
+  }
+
+  @Override
+  public void removeKeyEventBatchListener(
+    final IvKeyEventBatchListenerType listener)
+  {
+    this.pianoKeys.removeKeyEventBatchListener(listener);
+  }
+
+  @Override
+  public Flow.Publisher<IvKeyEventType> keyEventPublisher(
+    final IvKeyEventOverflowPolicy policy,
+    final int capacity)
+  {
+    return this.pianoKeys.keyEventPublisher(policy, capacity);
+  }
+
+  @Override
+  public IvKeyEventRingType keyEventRing()
+  {
+    return this.pianoKeys.keyEventRing();
+  }
+
+  @Override
+  public void keyPress(
+    final int index)
+  {
+    this.pianoKeys.keyPress(index);
+  }
+
+  @Override
+  public void keyRelease(
+    final int index)
+  {
+    this.pianoKeys.keyRelease(index);
+  }
+
+  @Override
+  public void keyPressLater(
+    final int index)
+  {
+    this.pianoKeys.keyPressLater(index);
+  }
+
+  @Override
+  public void keyReleaseLater(
+    final int index)
+  {
+    this.pianoKeys.keyReleaseLater(index);
+  }
+
+  @Override
+  public void keyPressAll(
+    final int[] indices)
+  {
+    this.pianoKeys.keyPressAll(indices);
+  }
+
+  @Override
+  public void keyReleaseAll(
+    final int[] indices)
+  {
+    this.pianoKeys.keyReleaseAll(indices);
+  }
+
+  @Override
+  public void setPressedKeys(
+    final BitSet pressed)
+  {
+    this.pianoKeys.setPressedKeys(pressed);
+  }
+
+  @Override
+  public boolean keyIsPressed(
+    final int index)
+  {
+    return this.pianoKeys.keyIsPressed(index);
+  }
+
+  @Override
+  public void forEachPressed(
+    final IntConsumer consumer)
+  {
+    this.pianoKeys.forEachPressed(consumer);
+  }
+
+  @Override
+  public int pressedCount()
+  {
+    return this.pianoKeys.pressedCount();
+  }
+
+  @Override
+  public int lowestPressed()
+  {
+    return this.pianoKeys.lowestPressed();
+  }
+
+  @Override
+  public int highestPressed()
+  {
+    return this.pianoKeys.highestPressed();
+  }
+
+  @Override
+  public IvKeySet pressedSnapshot()
+  {
+    return this.pianoKeys.pressedSnapshot();
+  }
+
+  @Override
+  public IvKeyPressedViewType pressedView()
+  {
+    return this.pianoKeys.pressedView();
+  }
+
+  private void onKeyPressedChanged(
+    final int index)
+  {
+    this.markDirty(index);
+  }
+
+  /**
+   * Find the X position of the given key.
+   *
+   * @param index The key index
+   *
+   * @return The X position
+   */
+
+  public double xPositionOf(
+    final int index)
+  {
+    if (index >= 0 && index < this.keyCount) {
+      return IvKeyGeometry.horizontalXOf(index, this.naturalKeyWidth.get());
+    }
+    return 0.0;
+  }
+
+  /**
+   * Find the X position of the center of the given key.
+   *
+   * @param index The key index
+   *
+   * @return The X position
+   */
+
+  public double xPositionCenterOf(
+    final int index)
+  {
+    return this.xPositionOf(index) + (this.naturalKeyWidth() / 2.0);
+  }
+
+  private final class PointerTarget
+    implements IvKeyPointerTargetType
+  {
+    PointerTarget()
+    {
+
+    }
+
+    @Override
+    public int keyAt(
+      final double x,
+      final double y)
+    {
+      return IvKeyGeometry.horizontalKeyAt(
+        IvHorizontalCanvasPiano.this.keyCount,
+        x,
+        y,
+        IvHorizontalCanvasPiano.this.naturalKeyWidth.get(),
+        IvHorizontalCanvasPiano.this.getHeight()
+      );
+    }
+
+    @Override
+    public void onKeyHoverChanged(
+      final int keyPrevious,
+      final int keyCurrent)
+    {
+      IvHorizontalCanvasPiano.this.onKeyHoverChanged(keyPrevious, keyCurrent);
+    }
+
+    @Override
+    public void onKeyPointerPressed(
+      final int key)
+    {
+      IvHorizontalCanvasPiano.this.pianoKeys.pointerPress(key);
+    }
+
+    @Override
+    public void onKeyPointerReleased(
+      final int key)
+    {
+      IvHorizontalCanvasPiano.this.pianoKeys.pointerRelease(key);
+    }
+  }
+}
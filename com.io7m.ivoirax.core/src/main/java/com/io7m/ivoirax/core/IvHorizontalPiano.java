@@ -17,31 +17,36 @@
 
 package com.io7m.ivoirax.core;
 
+import com.io7m.ivoirax.core.internal.IvKeyGeometry;
+import com.io7m.ivoirax.core.internal.IvKeyPointerTargetType;
+import com.io7m.ivoirax.core.internal.IvKeyPointerTracker;
+import com.io7m.ivoirax.core.internal.IvPianoKeys;
+import javafx.beans.InvalidationListener;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.binding.DoubleExpression;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.MapChangeListener;
-import javafx.collections.ObservableMap;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.scene.control.Label;
-import javafx.scene.input.MouseButton;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.IntConsumer;
 
 /**
  * A horizontal piano.
@@ -51,31 +56,31 @@ public final class IvHorizontalPiano
   extends Pane
   implements IvPianoType
 {
-  private static final Logger LOG =
-    LoggerFactory.getLogger(IvHorizontalPiano.class);
-
   private static final int KEY_COUNT_DEFAULT = (12 * 12) + 1;
 
-  private IvKeyEventHandlerType keyEvent;
-  private IvKeyEventType eventPrevious;
-  private final ArrayList<KeyNatural> naturalKeys;
+  private IvPianoTheme themeApplied;
+  private Scene sceneObserved;
+  private int octaveFirst;
+  private int octaveLast;
+  private final ArrayDeque<KeyAccidental> poolAccidentals;
+  private final ArrayDeque<KeyNatural> poolNaturals;
+  private final ArrayDeque<Label> poolLabels;
+  private final ArrayList<Node> nodesAdded;
+  private final ArrayList<Node> nodesRemoved;
   private final DoubleBinding accidentalKeyHeight;
   private final DoubleBinding accidentalKeyWidth;
-  private final HashMap<Integer, Key> keysAll;
-  private final ObservableMap<Integer, KeyPressed> keysPressed;
+  private final InvalidationListener viewportListener;
+  private final IvKeyMaterialization materialization;
+  private final IvKeyPointerTracker pointer;
+  private final IvPianoKeys pianoKeys;
+  private final Key[] keys;
   private final ReadOnlyDoubleProperty naturalKeyHeight;
   private final SimpleDoubleProperty naturalKeyWidth;
   private final SimpleObjectProperty<Font> keyFont;
-  private final SimpleObjectProperty<Paint> colorKeyAccidental;
-  private final SimpleObjectProperty<Paint> colorKeyAccidentalOver;
-  private final SimpleObjectProperty<Paint> colorKeyAccidentalPressed;
-  private final SimpleObjectProperty<Paint> colorKeyNatural;
-  private final SimpleObjectProperty<Paint> colorKeyNaturalOver;
-  private final SimpleObjectProperty<Paint> colorKeyNaturalPressed;
-  private final SimpleObjectProperty<Paint> colorStrokeAccidental;
-  private final SimpleObjectProperty<Paint> colorStrokeNatural;
-  private final SimpleObjectProperty<Paint> keyTextColor;
+  private final SimpleObjectProperty<IvPianoTheme> theme;
   private final int keyCount;
+  private final int naturalCount;
+  private final double[] keyOffsets;
 
   /**
    * A horizontal piano.
@@ -94,54 +99,62 @@ public final class IvHorizontalPiano
 
   public IvHorizontalPiano(
     final int inKeyCount)
+  {
+    this(inKeyCount, IvKeyMaterialization.MATERIALIZE_ALL);
+  }
+
+  /**
+   * A horizontal piano.
+   *
+   * @param inKeyCount        The number of keyboard keys
+   * @param inMaterialization The strategy used to create key nodes
+   */
+
+  public IvHorizontalPiano(
+    final int inKeyCount,
+    final IvKeyMaterialization inMaterialization)
   {
     if (inKeyCount <= 0) {
       throw new IllegalArgumentException("Key count must be positive.");
     }
 
-    this.keyEvent =
-      (event) -> {
-      };
+    this.materialization =
+      Objects.requireNonNull(inMaterialization, "materialization");
     this.keyCount =
       inKeyCount;
-    this.keysPressed =
-      FXCollections.observableHashMap();
-    this.keysAll =
-      new HashMap<>(this.keyCount);
+    this.naturalCount =
+      IvKeyGeometry.naturalCount(inKeyCount);
+    this.keyOffsets =
+      IvKeyGeometry.horizontalOffsets(inKeyCount);
+    this.pianoKeys =
+      new IvPianoKeys(this, inKeyCount, this::onKeyPressedChanged);
+    this.keys =
+      new Key[inKeyCount];
+
+    this.poolNaturals =
+      new ArrayDeque<>();
+    this.poolAccidentals =
+      new ArrayDeque<>();
+    this.poolLabels =
+      new ArrayDeque<>();
+    this.nodesAdded =
+      new ArrayList<>();
+    this.nodesRemoved =
+      new ArrayList<>();
+    this.octaveFirst =
+      0;
+    this.octaveLast =
+      -1;
+    this.viewportListener =
+      observable -> this.setNeedsLayout(true);
 
     this.keyFont =
       new SimpleObjectProperty<>(Font.font("Monospaced", FontWeight.BOLD, 9.0));
-    this.keyTextColor =
-      new SimpleObjectProperty<>(Color.gray(0.0));
-
-    this.colorStrokeNatural =
-      new SimpleObjectProperty<>(Color.gray(0.0));
-    this.colorStrokeAccidental =
-      new SimpleObjectProperty<>(Color.gray(0.0));
-
-    this.colorKeyNatural =
-      new SimpleObjectProperty<>(Color.gray(1.0));
-    this.colorKeyNaturalOver =
-      new SimpleObjectProperty<>(Color.gray(0.9));
-    this.colorKeyNaturalPressed =
-      new SimpleObjectProperty<>(Color.gray(0.8));
-
-    this.colorKeyAccidental =
-      new SimpleObjectProperty<>(Color.gray(0.1));
-    this.colorKeyAccidentalOver =
-      new SimpleObjectProperty<>(Color.gray(0.3));
-    this.colorKeyAccidentalPressed =
-      new SimpleObjectProperty<>(Color.gray(0.5));
-
-    this.colorKeyAccidental.addListener(observable -> this.updateColors());
-    this.colorKeyAccidentalOver.addListener(observable -> this.updateColors());
-    this.colorKeyAccidentalPressed.addListener(observable -> this.updateColors());
-    this.colorKeyNatural.addListener(observable -> this.updateColors());
-    this.colorKeyNaturalOver.addListener(observable -> this.updateColors());
-    this.colorKeyNaturalPressed.addListener(observable -> this.updateColors());
-    this.colorStrokeAccidental.addListener(observable -> this.updateColors());
-    this.colorStrokeNatural.addListener(observable -> this.updateColors());
-    this.keyTextColor.addListener(observable -> this.updateColors());
+    this.themeApplied =
+      IvPianoTheme.defaultTheme();
+    this.theme =
+      new SimpleObjectProperty<>(this.themeApplied);
+    this.theme.addListener(observable -> this.updateColors());
 
     this.naturalKeyWidth =
       new SimpleDoubleProperty(24.0);
@@ -152,253 +165,357 @@ public final class IvHorizontalPiano
     this.accidentalKeyHeight =
       this.naturalKeyHeight.divide(3.0)
         .multiply(2.0);
-    this.naturalKeys =
-      new ArrayList<>(this.keyCount);
+    this.pointer =
+      IvKeyPointerTracker.install(this, new PointerTarget());
 
-    this.createNaturalKeys();
-    this.createAccidentalKeys();
-    this.layoutKeys();
+    switch (this.materialization) {
+      case MATERIALIZE_ALL -> {
+        this.materializeOctaves(0, (this.keyCount - 1) / 12);
+      }
+      case MATERIALIZE_VISIBLE -> {
+        this.localToSceneTransformProperty()
+          .addListener(this.viewportListener);
+        this.sceneProperty()
+          .addListener((observable, oldValue, newValue) -> {
+            this.onSceneChanged(newValue);
+          });
+      }
+    }
 
     this.naturalKeyWidthProperty()
-      .addListener((observable, oldValue, newValue) -> this.layoutKeys());
-
-    this.keysPressed.addListener(
-      (MapChangeListener<? super Integer, ? super KeyPressed>)
-        this::onKeysPressedChanged
-    );
+      .addListener(observable -> this.requestLayout());
   }
 
-  private static boolean isAccidental(
-    final int index)
-  {
-    return switch (index % 12) {
-      case 0 -> false;
-      case 1 -> true;
-      case 2 -> false;
-      case 3 -> true;
-      case 4 -> false;
-      case 5 -> false;
-      case 6 -> true;
-      case 7 -> false;
-      case 8 -> true;
-      case 9 -> false;
-      case 10 -> true;
-      case 11 -> false;
-      default -> false;
-    };
-  }
+  /**
+   * Apply the current theme to all materialized keys in a single pass.
+   */
 
   private void updateColors()
   {
-    for (final var key : this.keysAll.values()) {
-      switch (key) {
-        case final KeyAccidental keyAccidental -> {
-          keyAccidental.setFill(this.colorKeyAccidental());
-        }
-        case final KeyNatural keyNatural -> {
-          keyNatural.setFill(this.colorKeyNatural());
-        }
+    this.themeApplied =
+      Objects.requireNonNullElse(this.theme.get(), IvPianoTheme.defaultTheme());
+
+    for (final var key : this.keys) {
+      if (key != null) {
+        this.keyThemeUpdate(key);
+        this.keyFillUpdate(key);
       }
     }
   }
 
-  private void createAccidentalKeys()
+  private void keyThemeUpdate(
+    final Key key)
   {
-    for (final var naturalKey : this.naturalKeys) {
-      final var sharpIndex = naturalKey.index() + 1;
-      if (isAccidental(sharpIndex)) {
-        final var accidentalKey = new KeyAccidental(sharpIndex);
-        accidentalKey.strokeProperty()
-          .bind(this.colorStrokeAccidental);
-
-        accidentalKey.setStrokeWidth(1.0);
-        accidentalKey.setFill(this.colorKeyAccidental.get());
-
-        accidentalKey.setOnMouseEntered(
-          event -> {
-            accidentalKey.setFill(this.colorKeyAccidentalOver.get());
-            this.publishKeyEvent(new IvKeyEnter(accidentalKey.index()));
-          });
-        accidentalKey.setOnMouseExited(
-          event -> {
-            accidentalKey.setFill(this.colorKeyAccidental.get());
-            this.publishKeyEvent(new IvKeyExit(accidentalKey.index()));
-          });
-        accidentalKey.setOnMousePressed(
-          event -> {
-            if (event.getButton() == MouseButton.PRIMARY) {
-              this.keyPressedSet(accidentalKey, false);
-            }
-          });
-        accidentalKey.setOnMouseReleased(event -> {
-          if (event.getButton() == MouseButton.PRIMARY) {
-            this.keysPressed.remove(accidentalKey.index());
-            accidentalKey.keyDraggedOverLast().ifPresent(this::keyPressedUnset);
-          }
-        });
-        accidentalKey.setOnMouseDragged(event -> {
-          if (event.getButton() == MouseButton.PRIMARY) {
-            this.onKeyDragged(event, accidentalKey);
-          }
-        });
-
-        accidentalKey.widthProperty()
-          .bind(this.accidentalKeyWidth);
-        accidentalKey.heightProperty()
-          .bind(this.accidentalKeyHeight);
-        accidentalKey.layoutXProperty()
-          .bind(
-            naturalKey.layoutXProperty()
-              .add(naturalKey.widthProperty())
-              .subtract(accidentalKey.widthProperty().divide(2.0))
-          );
-
-        this.getChildren().add(accidentalKey);
-        naturalKey.setSharp(accidentalKey);
-        this.keysAll.put(accidentalKey.index(), accidentalKey);
+    switch (key) {
+      case final KeyAccidental k -> {
+        k.setStroke(this.themeApplied.colorStrokeKeyAccidental());
+      }
+      case final KeyNatural k -> {
+        k.setStroke(this.themeApplied.colorStrokeKeyNatural());
+        if (k.label != null) {
+          k.label.setTextFill(this.themeApplied.colorKeyText());
+        }
       }
     }
   }
 
-  private void createNaturalKeys()
+  private KeyAccidental createAccidentalKey(
+    final int index)
   {
-    for (var index = 0; index < this.keyCount; ++index) {
-      if (!isAccidental(index)) {
-        final var naturalKey = new KeyNatural(index);
-        naturalKey.strokeProperty().bind(this.colorStrokeNatural);
+    final var accidentalKey = new KeyAccidental(index);
+    accidentalKey.setStrokeWidth(1.0);
 
-        naturalKey.setStrokeWidth(1.0);
-        naturalKey.setFill(this.colorKeyNatural.get());
-
-        naturalKey.setOnMouseEntered(
-          event -> {
-            naturalKey.setFill(this.colorKeyNaturalOver.get());
-            this.publishKeyEvent(new IvKeyEnter(naturalKey.index()));
-          });
-        naturalKey.setOnMouseExited(
-          event -> {
-            naturalKey.setFill(this.colorKeyNatural.get());
-            this.publishKeyEvent(new IvKeyExit(naturalKey.index()));
-          });
-        naturalKey.setOnMousePressed(
-          event -> {
-            if (event.getButton() == MouseButton.PRIMARY) {
-              this.keyPressedSet(naturalKey, false);
-            }
-          });
-        naturalKey.setOnMouseReleased(event -> {
-          if (event.getButton() == MouseButton.PRIMARY) {
-            this.keyPressedUnset(naturalKey);
-            naturalKey.keyDraggedOverLast().ifPresent(this::keyPressedUnset);
-          }
-        });
-        naturalKey.setOnMouseDragged(event -> {
-          if (event.getButton() == MouseButton.PRIMARY) {
-            this.onKeyDragged(event, naturalKey);
-          }
-        });
-
-        naturalKey.heightProperty()
-          .bind(this.naturalKeyHeight);
-        naturalKey.widthProperty()
-          .bind(this.naturalKeyWidth);
+    accidentalKey.setMouseTransparent(true);
+    accidentalKey.setViewOrder(-1.0);
+    return accidentalKey;
+  }
 
-        this.naturalKeys.add(naturalKey);
-        this.getChildren().add(naturalKey);
-        this.keysAll.put(naturalKey.index(), naturalKey);
+  private KeyNatural createNaturalKey(
+    final int index)
+  {
+    final var naturalKey = new KeyNatural(index);
+    naturalKey.setStrokeWidth(1.0);
 
-        if (index % 12 == 0) {
-          final var label = new Label();
-          label.setText("C%d".formatted(index / 12));
-          label.setAlignment(Pos.BOTTOM_CENTER);
-          label.fontProperty().bind(this.keyFont);
-          label.textFillProperty().bind(this.keyTextColor);
-
-          naturalKey.heightProperty()
-            .addListener((observable, oldValue, newValue) -> {
-              final var h = newValue.doubleValue();
-              label.setPrefHeight(h);
-              label.setMinHeight(h);
-              label.setMaxHeight(h);
-            });
-          naturalKey.widthProperty()
-            .addListener((observable, oldValue, newValue) -> {
-              final var w = newValue.doubleValue();
-              label.setPrefWidth(w);
-              label.setMinWidth(w);
-              label.setMaxWidth(w);
-            });
-
-          label.setFocusTraversable(false);
-          label.setMouseTransparent(true);
-          label.layoutXProperty().bind(naturalKey.layoutXProperty());
-          this.getChildren().add(label);
-        }
-      }
-    }
+    naturalKey.setMouseTransparent(true);
+    return naturalKey;
   }
 
-  private void layoutKeys()
+  private Label createLabel()
   {
-    var naturalKeyX = 0.0;
-    for (final var naturalKey : this.naturalKeys) {
-      naturalKey.setLayoutX(naturalKeyX);
-      naturalKeyX += this.naturalKeyWidth.get();
-    }
+    final var label = new Label();
+    label.setAlignment(Pos.BOTTOM_CENTER);
+    label.fontProperty().bind(this.keyFont);
+    label.setFocusTraversable(false);
+    label.setMouseTransparent(true);
+    label.setManaged(false);
+    label.setViewOrder(-0.5);
+    return label;
   }
 
   @Override
-  public SimpleObjectProperty<Paint> colorStrokeKeyAccidentalProperty()
+  protected double computePrefWidth(
+    final double height)
   {
-    return this.colorStrokeAccidental;
+    return this.naturalCount * this.naturalKeyWidth.get();
   }
 
   @Override
-  public SimpleObjectProperty<Paint> colorStrokeKeyNaturalProperty()
+  protected void layoutChildren()
   {
-    return this.colorStrokeNatural;
+    if (this.materialization == IvKeyMaterialization.MATERIALIZE_VISIBLE) {
+      this.materializeVisibleOctaves();
+    }
+    this.layoutKeys();
+    super.layoutChildren();
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyAccidentalProperty()
+  /**
+   * Position and size every materialized key in a single pass over the
+   * precomputed key offsets. Keys do not bind any of their properties to
+   * the piano, so a resize costs exactly one pass per pulse.
+   */
+
+  private void layoutKeys()
   {
-    return this.colorKeyAccidental;
+    final var w = this.naturalKeyWidth.get();
+    final var h = this.getHeight();
+    final var accidentalW = this.accidentalKeyWidth.get();
+    final var accidentalH = this.accidentalKeyHeight.get();
+    final var indexFirst = this.octaveFirst * 12;
+    final var indexEnd = Math.min(this.keyCount, (this.octaveLast + 1) * 12);
+
+    for (int index = indexFirst; index < indexEnd; ++index) {
+      final var key = this.keys[index];
+      final var x = this.keyOffsets[index] * w;
+      switch (key) {
+        case final KeyAccidental k -> {
+          k.setLayoutX(x);
+          k.setWidth(accidentalW);
+          k.setHeight(accidentalH);
+        }
+        case final KeyNatural k -> {
+          k.setLayoutX(x);
+          k.setWidth(w);
+          k.setHeight(h);
+          if (k.label != null) {
+            k.label.resizeRelocate(x, 0.0, w, h);
+          }
+        }
+      }
+    }
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyAccidentalOverProperty()
+  /**
+   * The visible region of the piano changes whenever the piano moves within
+   * the scene (such as when an enclosing scroll pane is scrolled), or
+   * whenever the scene itself is resized.
+   */
+
+  private void onSceneChanged(
+    final Scene scene)
   {
-    return this.colorKeyAccidentalOver;
+    if (this.sceneObserved != null) {
+      this.sceneObserved.widthProperty()
+        .removeListener(this.viewportListener);
+      this.sceneObserved.heightProperty()
+        .removeListener(this.viewportListener);
+    }
+    this.sceneObserved = scene;
+    if (scene != null) {
+      scene.widthProperty().addListener(this.viewportListener);
+      scene.heightProperty().addListener(this.viewportListener);
+    }
+    this.setNeedsLayout(true);
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyAccidentalPressedProperty()
+  /**
+   * Calculate the region of the piano that is currently visible, in local
+   * coordinates. This is the intersection of the scene bounds with the
+   * clips of all ancestors (scroll panes clip their content to the viewport).
+   */
+
+  private Bounds visibleBounds()
   {
-    return this.colorKeyAccidentalPressed;
+    final var scene = this.getScene();
+    if (scene == null) {
+      return null;
+    }
+
+    var visible = this.sceneToLocal(
+      new BoundingBox(0.0, 0.0, scene.getWidth(), scene.getHeight())
+    );
+
+    for (Parent p = this.getParent(); p != null; p = p.getParent()) {
+      final var clip = p.getClip();
+      if (clip != null) {
+        final var clipBounds =
+          this.sceneToLocal(p.localToScene(clip.getBoundsInParent()));
+        visible = intersection(visible, clipBounds);
+      }
+    }
+    return visible;
+  }
+
+  private static Bounds intersection(
+    final Bounds a,
+    final Bounds b)
+  {
+    final var minX = Math.max(a.getMinX(), b.getMinX());
+    final var minY = Math.max(a.getMinY(), b.getMinY());
+    final var maxX = Math.min(a.getMaxX(), b.getMaxX());
+    final var maxY = Math.min(a.getMaxY(), b.getMaxY());
+    return new BoundingBox(
+      minX,
+      minY,
+      Math.max(0.0, maxX - minX),
+      Math.max(0.0, maxY - minY)
+    );
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyNaturalProperty()
+  /**
+   * Create nodes for the octaves that intersect the visible region, and
+   * return the nodes of octaves that no longer intersect it to the pools.
+   */
+
+  private void materializeVisibleOctaves()
   {
-    return this.colorKeyNatural;
+    var first = 0;
+    var last = -1;
+
+    final var visible = this.visibleBounds();
+    final var w = this.naturalKeyWidth.get();
+    if (visible != null && visible.getWidth() > 0.0 && w > 0.0) {
+      final var ordinalFirst =
+        Math.max(0, (int) Math.floor(visible.getMinX() / w));
+      final var ordinalLast =
+        Math.min(this.naturalCount - 1, (int) Math.floor(visible.getMaxX() / w));
+
+      if (ordinalFirst <= ordinalLast) {
+        first = ordinalFirst / 7;
+        last = ordinalLast / 7;
+      }
+    }
+
+    this.materializeOctaves(first, last);
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyNaturalOverProperty()
+  private void materializeOctaves(
+    final int first,
+    final int last)
   {
-    return this.colorKeyNaturalOver;
+    for (int octave = this.octaveFirst; octave <= this.octaveLast; ++octave) {
+      if (octave < first || octave > last) {
+        this.octaveRelease(octave);
+      }
+    }
+    for (int octave = first; octave <= last; ++octave) {
+      if (octave < this.octaveFirst || octave > this.octaveLast) {
+        this.octaveMaterialize(octave);
+      }
+    }
+
+    this.octaveFirst = first;
+    this.octaveLast = last;
+
+    final var children = this.getChildren();
+    if (!this.nodesRemoved.isEmpty()) {
+      children.removeAll(this.nodesRemoved);
+      this.nodesRemoved.clear();
+    }
+    if (!this.nodesAdded.isEmpty()) {
+      children.addAll(this.nodesAdded);
+      this.nodesAdded.clear();
+    }
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyNaturalPressedProperty()
+  private void octaveMaterialize(
+    final int octave)
   {
-    return this.colorKeyNaturalPressed;
+    final var indexEnd = Math.min(this.keyCount, (octave + 1) * 12);
+    for (int index = octave * 12; index < indexEnd; ++index) {
+      final Key key;
+      if (IvKeyGeometry.isAccidental(index)) {
+        var accidental = this.poolAccidentals.poll();
+        if (accidental == null) {
+          accidental = this.createAccidentalKey(index);
+        }
+        key = accidental;
+      } else {
+        var natural = this.poolNaturals.poll();
+        if (natural == null) {
+          natural = this.createNaturalKey(index);
+        }
+        if (index % 12 == 0) {
+          var label = this.poolLabels.poll();
+          if (label == null) {
+            label = this.createLabel();
+          }
+          label.setText("C%d".formatted(octave));
+          natural.label = label;
+          this.nodesAdded.add(label);
+        }
+        key = natural;
+      }
+
+      key.setIndex(index);
+      this.keyThemeUpdate(key);
+      this.keyFillUpdate(key);
+      this.keys[index] = key;
+      this.nodesAdded.add(key);
+    }
   }
 
-  @Override
-  public SimpleObjectProperty<Paint> colorKeyTextProperty()
+  private void octaveRelease(
+    final int octave)
+  {
+    final var indexEnd = Math.min(this.keyCount, (octave + 1) * 12);
+    for (int index = octave * 12; index < indexEnd; ++index) {
+      final var key = this.keys[index];
+      this.keys[index] = null;
+      this.nodesRemoved.add(key);
+
+      switch (key) {
+        case final KeyAccidental k -> {
+          this.poolAccidentals.push(k);
+        }
+        case final KeyNatural k -> {
+          if (k.label != null) {
+            this.nodesRemoved.add(k.label);
+            this.poolLabels.push(k.label);
+            k.label = null;
+          }
+          this.poolNaturals.push(k);
+        }
+      }
+    }
+  }
+
+  private void keyFillUpdate(
+    final Key key)
   {
-    return this.keyTextColor;
+    final var index = key.index();
+    final var pressed = this.pianoKeys.keyIsPressed(index);
+    final var hovered = this.pointer.keyHovered() == index;
+    switch (key) {
+      case final KeyAccidental k -> {
+        if (pressed) {
+          k.setFill(this.themeApplied.colorKeyAccidentalPressed());
+        } else if (hovered) {
+          k.setFill(this.themeApplied.colorKeyAccidentalOver());
+        } else {
+          k.setFill(this.themeApplied.colorKeyAccidental());
+        }
+      }
+      case final KeyNatural k -> {
+        if (pressed) {
+          k.setFill(this.themeApplied.colorKeyNaturalPressed());
+        } else if (hovered) {
+          k.setFill(this.themeApplied.colorKeyNaturalOver());
+        } else {
+          k.setFill(this.themeApplied.colorKeyNatural());
+        }
+      }
+    }
   }
 
   /**
@@ -437,6 +554,12 @@ public final class IvHorizontalPiano
     return this.accidentalKeyWidth;
   }
 
+  @Override
+  public SimpleObjectProperty<IvPianoTheme> themeProperty()
+  {
+    return this.theme;
+  }
+
   @Override
   public int keyCount()
   {
@@ -483,177 +606,223 @@ public final class IvHorizontalPiano
   public void setOnKeyEventHandler(
     final IvKeyEventHandlerType handler)
   {
-    Objects.requireNonNull(handler, "handler");
+    this.pianoKeys.setOnKeyEventHandler(handler);
+  }
+
+  @Override
+  public void setOnKeyEventHandler(
+    final IvKeyEventHandlerType handler,
+    final Executor executor)
+  {
+    this.pianoKeys.setOnKeyEventHandler(handler, executor);
+  }
 
-    this.keyEvent = (event -> {
-      try {
-        handler.onKeyEvent(event);
-      } catch (final Throwable e) {
-        LOG.debug("Ignored exception in event handler: ", e);
-      }
-    });
+  @Override
+  public void setOnKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    this.pianoKeys.setOnKeyEventListener(listener);
+  }
+
+  @Override
+  public void setOnKeyEventListener(
+    final IvKeyEventListenerType listener,
+    final Set<IvKeyEventKind> kinds)
+  {
+    this.pianoKeys.setOnKeyEventListener(listener, kinds);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    return this.pianoKeys.addKeyEventHandler(handler);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventHandler(
+    final IvKeyEventHandlerType handler,
+    final Set<IvKeyEventKind> kinds)
+  {
+    return this.pianoKeys.addKeyEventHandler(handler, kinds);
+  }
+
+  @Override
+  public void removeKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    this.pianoKeys.removeKeyEventHandler(handler);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    return this.pianoKeys.addKeyEventListener(listener);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventListener(
+    final IvKeyEventListenerType listener,
+    final Set<IvKeyEventKind> kinds)
+  {
+    return this.pianoKeys.addKeyEventListener(listener, kinds);
+  }
+
+  @Override
+  public void removeKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    this.pianoKeys.removeKeyEventListener(listener);
+  }
+
+  @Override
+  public IvKeySubscriptionType addKeyEventBatchListener(
+    final IvKeyEventBatchListenerType listener)
+  {
+    return this.pianoKeys.addKeyEventBatchListener(listener);
+  }
+
+  @Override
+  public void removeKeyEventBatchListener(
+    final IvKeyEventBatchListenerType listener)
+  {
+    this.pianoKeys.removeKeyEventBatchListener(listener);
+  }
+
+  @Override
+  public Flow.Publisher<IvKeyEventType> keyEventPublisher(
+    final IvKeyEventOverflowPolicy policy,
+    final int capacity)
+  {
+    return this.pianoKeys.keyEventPublisher(policy, capacity);
+  }
+
+  @Override
+  public IvKeyEventRingType keyEventRing()
+  {
+    return this.pianoKeys.keyEventRing();
   }
 
   @Override
   public void keyPress(
     final int index)
   {
-    if (index >= 0 && index < this.keyCount) {
-      this.keyPressedSet(this.keysAll.get(index), true);
-    }
+    this.pianoKeys.keyPress(index);
   }
 
   @Override
   public void keyRelease(
     final int index)
   {
-    if (index >= 0 && index < this.keyCount) {
-      this.keyPressedUnset(this.keysAll.get(index));
-    }
+    this.pianoKeys.keyRelease(index);
   }
 
   @Override
-  public boolean keyIsPressed(
+  public void keyPressLater(
     final int index)
   {
-    if (index >= 0 && index < this.keyCount) {
-      return this.keysPressed.get(index) != null;
-    }
-    return false;
-  }
-
-  private void onKeyDragged(
-    final MouseEvent event,
-    final Key keySource)
-  {
-    final var picked =
-      event.getPickResult();
-    final var pickedNode =
-      picked.getIntersectedNode();
-
-    /*
-     * When clicking and dragging a key, the original key will receive
-     * drag events that contain a "pick result" that can be used to identify
-     * what key the mouse cursor is over now, mid-drag.
-     *
-     * As the cursor is dragged over the keys, we need to artificially
-     * press and release those keys as the cursor passes over them. We avoid
-     * pressing and releasing the same key in the same drag event by only
-     * releasing a key if it isn't the one that's currently picked.
-     */
-
-    if (pickedNode instanceof final Key keyPicked) {
-      final var keyDraggedLastOpt =
-        keySource.keyDraggedOverLast();
-
-      if (keyDraggedLastOpt.isPresent()) {
-        final var keyDraggedLast = keyDraggedLastOpt.get();
-        if (keyDraggedLast != keyPicked) {
-          this.publishKeyEvent(new IvKeyExit(keyDraggedLast.index));
-          this.keyPressedUnset(keyDraggedLast);
-        }
-      }
+    this.pianoKeys.keyPressLater(index);
+  }
 
-      keySource.setKeyDraggedOverLast(keyPicked);
-      this.publishKeyEvent(new IvKeyEnter(keyPicked.index));
-      this.keyPressedSet(keyPicked, false);
-    }
+  @Override
+  public void keyReleaseLater(
+    final int index)
+  {
+    this.pianoKeys.keyReleaseLater(index);
   }
 
-  /**
-   * There are fairly complex interactions between the order of JavaFX event
-   * deliveries, and the events that we publish ourselves based on the custom
-   * key dragging behaviour. The stream of published events are filtered
-   * slightly here to give more predictable semantics to consumers of the
-   * events. For example, we don't redundantly publish "key entered" events
-   * for keys that are already pressed.
-   */
+  @Override
+  public void keyPressAll(
+    final int[] indices)
+  {
+    this.pianoKeys.keyPressAll(indices);
+  }
 
-  private void publishKeyEvent(
-    final IvKeyEventType event)
+  @Override
+  public void keyReleaseAll(
+    final int[] indices)
   {
-    if (Objects.equals(this.eventPrevious, event)) {
-      return;
-    }
-    this.eventPrevious = event;
+    this.pianoKeys.keyReleaseAll(indices);
+  }
 
-    switch (event) {
-      case final IvKeyEnter enter -> {
-        if (!this.keysPressed.containsKey(enter.index())) {
-          this.keyEvent.onKeyEvent(event);
-        }
-      }
-      case final IvKeyExit ignored -> {
-        this.keyEvent.onKeyEvent(event);
-      }
-      case final IvKeyPressed ignored -> {
-        this.keyEvent.onKeyEvent(event);
-      }
-      case final IvKeyReleased ignored -> {
-        this.keyEvent.onKeyEvent(event);
-      }
-    }
+  @Override
+  public void setPressedKeys(
+    final BitSet pressed)
+  {
+    this.pianoKeys.setPressedKeys(pressed);
   }
 
-  private void keyPressedUnset(
-    final Key key)
+  @Override
+  public boolean keyIsPressed(
+    final int index)
   {
-    this.keysPressed.remove(key.index());
+    return this.pianoKeys.keyIsPressed(index);
   }
 
-  private void keyPressedSet(
-    final Key key,
-    final boolean isSynthesized)
+  @Override
+  public void forEachPressed(
+    final IntConsumer consumer)
   {
-    this.keysPressed.put(
-      key.index(),
-      new KeyPressed(key, isSynthesized)
-    );
+    this.pianoKeys.forEachPressed(consumer);
   }
 
-  private void onKeysPressedChanged(
-    final MapChangeListener.Change<? extends Integer, ? extends KeyPressed> change)
+  @Override
+  public int pressedCount()
   {
-    if (change.wasAdded()) {
-      final var keyPressed =
-        change.getValueAdded();
-      final var addedKey =
-        keyPressed.key();
+    return this.pianoKeys.pressedCount();
+  }
 
-      LOG.trace("KeyPressed: {}", addedKey);
-      this.publishKeyEvent(
-        new IvKeyPressed(addedKey.index(), keyPressed.isSynthesized())
-      );
+  @Override
+  public int lowestPressed()
+  {
+    return this.pianoKeys.lowestPressed();
+  }
 
-      switch (addedKey) {
-        case final KeyAccidental k -> {
-          k.setFill(this.colorKeyAccidentalPressed.get());
-        }
-        case final KeyNatural k -> {
-          k.setFill(this.colorKeyNaturalPressed.get());
-        }
-      }
-    }
+  @Override
+  public int highestPressed()
+  {
+    return this.pianoKeys.highestPressed();
+  }
 
-    if (change.wasRemoved()) {
-      final var keyPressed =
-        change.getValueRemoved();
-      final var removedKey =
-        keyPressed.key();
+  @Override
+  public IvKeySet pressedSnapshot()
+  {
+    return this.pianoKeys.pressedSnapshot();
+  }
 
-      LOG.trace("KeyReleased: {}", removedKey);
-      this.publishKeyEvent(
-        new IvKeyReleased(removedKey.index(), keyPressed.isSynthesized())
-      );
+  @Override
+  public IvKeyPressedViewType pressedView()
+  {
+    return this.pianoKeys.pressedView();
+  }
 
-      switch (removedKey) {
-        case final KeyAccidental k -> {
-          k.setFill(this.colorKeyAccidental.get());
-        }
-        case final KeyNatural k -> {
-          k.setFill(this.colorKeyNatural.get());
-        }
+  private void onKeyHoverChanged(
+    final int previous,
+    final int index)
+  {
+    if (previous != -1) {
+      final var key = this.keys[previous];
+      if (key != null) {
+        this.keyFillUpdate(key);
+      }
+      this.pianoKeys.exit(previous);
+    }
+    if (index != -1) {
+      final var key = this.keys[index];
+      if (key != null) {
+        this.keyFillUpdate(key);
       }
+      this.pianoKeys.enter(index);
+    }
+  }
+
+  private void onKeyPressedChanged(
+    final int index)
+  {
+    final var key = this.keys[index];
+    if (key != null) {
+      this.keyFillUpdate(key);
     }
   }
 
@@ -669,7 +838,7 @@ public final class IvHorizontalPiano
     final int index)
   {
     if (index >= 0 && index < this.keyCount) {
-      return this.keysAll.get(index).getLayoutX();
+      return IvKeyGeometry.horizontalXOf(index, this.naturalKeyWidth.get());
     }
     return 0.0;
   }
@@ -688,18 +857,10 @@ public final class IvHorizontalPiano
     return this.xPositionOf(index) + (this.naturalKeyWidth() / 2.0);
   }
 
-  private record KeyPressed(
-    Key key,
-    boolean isSynthesized)
-  {
-
-  }
-
   private static sealed abstract class Key
     extends Rectangle
   {
-    private final int index;
-    private Key keyDraggedOverLast;
+    private int index;
 
     Key(
       final int inIndex)
@@ -712,15 +873,10 @@ public final class IvHorizontalPiano
       return this.index;
     }
 
-    public Optional<Key> keyDraggedOverLast()
+    public final void setIndex(
+      final int newIndex)
     {
-      return Optional.ofNullable(this.keyDraggedOverLast);
-    }
-
-    public void setKeyDraggedOverLast(
-      final Key key)
-    {
-      this.keyDraggedOverLast = key;
+      this.index = newIndex;
     }
   }
 
@@ -743,7 +899,7 @@ public final class IvHorizontalPiano
   private static final class KeyNatural
     extends Key
   {
-    private KeyAccidental sharp;
+    private Label label;
 
     KeyNatural(
       final int index)
@@ -751,16 +907,55 @@ public final class IvHorizontalPiano
       super(index);
     }
 
-    public void setSharp(
-      final KeyAccidental newSharp)
+    @Override
+    public String toString()
+    {
+      return "[KeyNatural %d]".formatted(this.index());
+    }
+  }
+
+  private final class PointerTarget
+    implements IvKeyPointerTargetType
+  {
+    PointerTarget()
     {
-      this.sharp = Objects.requireNonNull(newSharp, "sharp");
+
     }
 
     @Override
-    public String toString()
+    public int keyAt(
+      final double x,
+      final double y)
     {
-      return "[KeyNatural %d]".formatted(this.index());
+      return IvKeyGeometry.horizontalKeyAt(
+        IvHorizontalPiano.this.keyCount,
+        x,
+        y,
+        IvHorizontalPiano.this.naturalKeyWidth.get(),
+        IvHorizontalPiano.this.getHeight()
+      );
+    }
+
+    @Override
+    public void onKeyHoverChanged(
+      final int keyPrevious,
+      final int keyCurrent)
+    {
+      IvHorizontalPiano.this.onKeyHoverChanged(keyPrevious, keyCurrent);
+    }
+
+    @Override
+    public void onKeyPointerPressed(
+      final int key)
+    {
+      IvHorizontalPiano.this.pianoKeys.pointerPress(key);
+    }
+
+    @Override
+    public void onKeyPointerReleased(
+      final int key)
+    {
+      IvHorizontalPiano.this.pianoKeys.pointerRelease(key);
     }
   }
 }
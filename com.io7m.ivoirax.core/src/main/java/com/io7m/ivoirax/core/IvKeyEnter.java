@@ -27,6 +27,12 @@ public record IvKeyEnter(
   int index)
   implements IvKeyEventType
 {
+  @Override
+  public IvKeyEventKind kind()
+  {
+    return IvKeyEventKind.KEY_ENTER;
+  }
+
   @Override
   public String toString()
   {
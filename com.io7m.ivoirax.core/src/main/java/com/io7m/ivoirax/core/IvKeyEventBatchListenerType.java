@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * The type of listeners that receive key events in batches, one batch per
+ * JavaFX pulse.
+ *
+ * @see IvPianoType#addKeyEventBatchListener(IvKeyEventBatchListenerType)
+ */
+
+@FunctionalInterface
+public interface IvKeyEventBatchListenerType
+{
+  /**
+   * A batch of key events was produced. The batch is never empty, and is
+   * only valid for the duration of this call.
+   *
+   * @param batch The batch
+   */
+
+  void onKeyEventBatch(
+    IvKeyEventBatchType batch);
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * A read-only view of the key events produced during a single JavaFX pulse,
+ * in the order that they were produced. Batches are reused: a batch is
+ * only valid for the duration of the call to
+ * {@link IvKeyEventBatchListenerType#onKeyEventBatch(IvKeyEventBatchType)}
+ * to which it was passed, and its contents must be copied if they are
+ * required afterwards.
+ */
+
+public interface IvKeyEventBatchType
+{
+  /**
+   * @return The number of events in the batch
+   */
+
+  int size();
+
+  /**
+   * @param position The position of the event within the batch
+   *
+   * @return The kind of the event at the given position
+   */
+
+  IvKeyEventKind kind(
+    int position);
+
+  /**
+   * @param position The position of the event within the batch
+   *
+   * @return The key index of the event at the given position
+   */
+
+  int index(
+    int position);
+
+  /**
+   * @param position The position of the event within the batch
+   *
+   * @return {@code true} if the event at the given position concerns a
+   * synthetic key press
+   */
+
+  boolean isSynthesized(
+    int position);
+
+  /**
+   * Construct an event value for the event at the given position. Unlike
+   * the other methods on this interface, this allocates a new object.
+   *
+   * @param position The position of the event within the batch
+   *
+   * @return The event at the given position
+   */
+
+  default IvKeyEventType event(
+    final int position)
+  {
+    final var index = this.index(position);
+    return switch (this.kind(position)) {
+      case KEY_ENTER -> new IvKeyEnter(index);
+      case KEY_EXIT -> new IvKeyExit(index);
+      case KEY_PRESSED -> new IvKeyPressed(index, this.isSynthesized(position));
+      case KEY_RELEASED -> new IvKeyReleased(index, this.isSynthesized(position));
+    };
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A read position within an {@link IvKeyEventRingType}. A cursor must only
+ * be used by one thread at a time.
+ */
+
+public interface IvKeyEventCursorType
+{
+  /**
+   * Pass every event published since the last call to the given receiver,
+   * in order.
+   *
+   * @param receiver The receiver of packed events
+   *
+   * @return The number of events passed to the receiver
+   *
+   * @see IvKeyEventPacking
+   */
+
+  int poll(
+    LongConsumer receiver);
+
+  /**
+   * @return The total number of events that were overwritten before this
+   * cursor could read them
+   */
+
+  long lost();
+}
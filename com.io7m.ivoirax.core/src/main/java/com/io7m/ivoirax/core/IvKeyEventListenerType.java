@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * The type of primitive piano keyboard event listeners. This is equivalent
+ * to {@link IvKeyEventHandlerType}, but events are delivered as plain
+ * arguments and so the piano allocates nothing in order to deliver them.
+ * All methods do nothing by default.
+ *
+ * @see IvPianoType#setOnKeyEventListener(IvKeyEventListenerType)
+ */
+
+public interface IvKeyEventListenerType
+{
+  /**
+   * The cursor moved over a key.
+   *
+   * @param index The key index
+   *
+   * @see IvKeyEnter
+   */
+
+  default void onEnter(
+    final int index)
+  {
+
+  }
+
+  /**
+   * The cursor moved off a key.
+   *
+   * @param index The key index
+   *
+   * @see IvKeyExit
+   */
+
+  default void onExit(
+    final int index)
+  {
+
+  }
+
+  /**
+   * A key was pressed.
+   *
+   * @param index         The key index
+   * @param isSynthesized {@code true} if the key was pressed via a synthetic
+   *                      keypress rather than the mouse
+   *
+   * @see IvKeyPressed
+   */
+
+  default void onPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+
+  }
+
+  /**
+   * A key was released.
+   *
+   * @param index         The key index
+   * @param isSynthesized {@code true} if the key was originally pressed with
+   *                      {@link IvPianoType#keyPress(int)}
+   *
+   * @see IvKeyReleased
+   */
+
+  default void onRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+
+  }
+}
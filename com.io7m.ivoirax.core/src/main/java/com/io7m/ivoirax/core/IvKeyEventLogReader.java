@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A reader of the binary logs written by {@link IvKeyEventRecorder}.
+ */
+
+public final class IvKeyEventLogReader implements Closeable
+{
+  private static final IvKeyEventKind[] KINDS =
+    IvKeyEventKind.values();
+
+  private final InputStream stream;
+  private final int segmentSize;
+  private final long length;
+  private long position;
+  private long time;
+
+  private IvKeyEventLogReader(
+    final InputStream inStream,
+    final int inSegmentSize,
+    final long inLength)
+  {
+    this.stream =
+      inStream;
+    this.segmentSize =
+      inSegmentSize;
+    this.length =
+      inLength;
+    this.position =
+      IvKeyEventRecorder.HEADER_SIZE;
+  }
+
+  /**
+   * Open a log for reading.
+   *
+   * @param file The log file
+   *
+   * @return A reader
+   *
+   * @throws IOException On I/O errors, or if the file is not a log
+   */
+
+  public static IvKeyEventLogReader open(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    final var stream =
+      new BufferedInputStream(Files.newInputStream(file));
+
+    try {
+      final var data = new DataInputStream(stream);
+      final var magic = data.readInt();
+      if (magic != IvKeyEventRecorder.MAGIC) {
+        throw new IOException(
+          "Unrecognized file magic number 0x%08x".formatted(
+            Integer.valueOf(magic))
+        );
+      }
+      final var version = data.readInt();
+      if (version != IvKeyEventRecorder.VERSION) {
+        throw new IOException(
+          "Unsupported log version %d".formatted(Integer.valueOf(version))
+        );
+      }
+      final var segmentSize = data.readInt();
+      if (segmentSize <= IvKeyEventRecorder.HEADER_SIZE) {
+        throw new IOException(
+          "Invalid segment size %d".formatted(Integer.valueOf(segmentSize))
+        );
+      }
+      final var length = data.readLong();
+      if (length != 0L && length < IvKeyEventRecorder.HEADER_SIZE) {
+        throw new IOException(
+          "Invalid log length %d".formatted(Long.valueOf(length))
+        );
+      }
+      return new IvKeyEventLogReader(stream, segmentSize, length);
+    } catch (final IOException e) {
+      stream.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Read the next event from the log.
+   *
+   * @return The next event, or nothing if the end of the log was reached
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public Optional<IvKeyEventTimed> read()
+    throws IOException
+  {
+    while (true) {
+      final var header = this.readVarLong();
+      if (header < 0L) {
+        return Optional.empty();
+      }
+
+      /*
+       * A zero byte is segment padding: skip to the start of the next
+       * segment.
+       */
+
+      if (header == 0L) {
+        final var offset = this.position % this.segmentSize;
+        if (offset != 0L && !this.skip(this.segmentSize - offset)) {
+          return Optional.empty();
+        }
+        continue;
+      }
+
+      final var delta = this.readVarLong();
+      if (delta < 0L) {
+        return Optional.empty();
+      }
+
+      this.time += delta;
+      return Optional.of(new IvKeyEventTimed(this.time, decode(header - 1L)));
+    }
+  }
+
+  /**
+   * Read all of the remaining events from the log.
+   *
+   * @return The events
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public List<IvKeyEventTimed> readAll()
+    throws IOException
+  {
+    final var results = new ArrayList<IvKeyEventTimed>();
+    while (true) {
+      final var next = this.read();
+      if (next.isEmpty()) {
+        return results;
+      }
+      results.add(next.get());
+    }
+  }
+
+  private static IvKeyEventType decode(
+    final long header)
+  {
+    final var index = (int) (header >>> 3);
+    final var isSynthesized = (header & 0b100L) != 0L;
+    return switch (KINDS[(int) (header & 0b11L)]) {
+      case KEY_ENTER -> new IvKeyEnter(index);
+      case KEY_EXIT -> new IvKeyExit(index);
+      case KEY_PRESSED -> new IvKeyPressed(index, isSynthesized);
+      case KEY_RELEASED -> new IvKeyReleased(index, isSynthesized);
+    };
+  }
+
+  /**
+   * @return {@code false} if the end of the log was reached
+   */
+
+  private boolean skip(
+    final long count)
+    throws IOException
+  {
+    var remaining = count;
+    while (remaining > 0L) {
+      var skipped = this.stream.skip(remaining);
+      if (skipped <= 0L) {
+        if (this.stream.read() < 0) {
+          return false;
+        }
+        skipped = 1L;
+      }
+      remaining -= skipped;
+      this.position += skipped;
+    }
+    return true;
+  }
+
+  /**
+   * @return The next variable-length integer, or {@code -1} at the end of
+   * the log. A log whose length is zero was not closed cleanly, and is read
+   * until the end of the file.
+   */
+
+  private long readVarLong()
+    throws IOException
+  {
+    if (this.length != 0L && this.position >= this.length) {
+      return -1L;
+    }
+
+    long result = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final var b = this.stream.read();
+      if (b < 0) {
+        if (shift == 0) {
+          return -1L;
+        }
+        throw new EOFException("Truncated record at offset " + this.position);
+      }
+      ++this.position;
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed record at offset " + this.position);
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.stream.close();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * The policy applied when a subscriber to a key event publisher does not
+ * request events as quickly as the piano produces them, and the
+ * subscriber's bounded buffer of pending events becomes full.
+ *
+ * @see IvPianoType#keyEventPublisher(IvKeyEventOverflowPolicy, int)
+ */
+
+public enum IvKeyEventOverflowPolicy
+{
+  /**
+   * Only hover events ({@link IvKeyEnter} and {@link IvKeyExit}) are ever
+   * evicted from the buffer: an incoming hover event is discarded, and an
+   * incoming press or release displaces the oldest pending hover event.
+   * If the buffer holds only presses and releases, the incoming press or
+   * release is itself discarded, and the subscriber may then observe a
+   * press without its release (or the reverse). Pending events are never
+   * lost, and the subscription never fails.
+   */
+
+  DROP_HOVER,
+
+  /**
+   * Presses and releases are never discarded: hover events are dropped as
+   * with {@link #DROP_HOVER}, but if the buffer is full of presses and
+   * releases alone, the subscription fails.
+   */
+
+  BUFFER_PRESSES,
+
+  /**
+   * The subscription fails as soon as the buffer overflows.
+   */
+
+  FAIL
+}
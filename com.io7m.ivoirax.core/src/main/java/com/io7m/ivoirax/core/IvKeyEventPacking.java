@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * Functions to encode and decode key events packed into {@code long}
+ * values.
+ *
+ * A packed event holds, from the least significant bit upwards: the
+ * ordinal of the event's {@link IvKeyEventKind} in two bits, the
+ * synthesized flag in one bit, the key index in {@value #INDEX_BITS} bits,
+ * and the least significant {@value #TIMESTAMP_BITS} bits of the
+ * {@link System#nanoTime()} value at which the event was produced.
+ * Timestamps therefore wrap around roughly every nine and a half hours, and
+ * should be compared by subtraction modulo {@code 2^45}.
+ *
+ * @see IvKeyEventRingType
+ */
+
+public final class IvKeyEventPacking
+{
+  /**
+   * The number of bits used to hold key indices.
+   */
+
+  public static final int INDEX_BITS = 16;
+
+  /**
+   * The number of bits used to hold timestamps.
+   */
+
+  public static final int TIMESTAMP_BITS = 45;
+
+  /**
+   * The largest key count for which events can be packed.
+   */
+
+  public static final int KEY_COUNT_MAXIMUM = 1 << INDEX_BITS;
+
+  private static final IvKeyEventKind[] KINDS =
+    IvKeyEventKind.values();
+
+  private static final int INDEX_SHIFT = 3;
+  private static final int TIMESTAMP_SHIFT = INDEX_SHIFT + INDEX_BITS;
+  private static final long INDEX_MASK = (1L << INDEX_BITS) - 1L;
+  private static final long TIMESTAMP_MASK = (1L << TIMESTAMP_BITS) - 1L;
+
+  private IvKeyEventPacking()
+  {
+
+  }
+
+  /**
+   * Pack an event.
+   *
+   * @param kind          The event kind
+   * @param index         The key index
+   * @param isSynthesized The synthesized flag
+   * @param timestamp     The event time in nanoseconds
+   *
+   * @return The packed event
+   */
+
+  public static long pack(
+    final IvKeyEventKind kind,
+    final int index,
+    final boolean isSynthesized,
+    final long timestamp)
+  {
+    final var time = (timestamp & TIMESTAMP_MASK) << TIMESTAMP_SHIFT;
+    final var key = (index & INDEX_MASK) << INDEX_SHIFT;
+    final var flags = (isSynthesized ? 0b100L : 0L) | kind.ordinal();
+    return time | key | flags;
+  }
+
+  /**
+   * @param packed The packed event
+   *
+   * @return The event kind
+   */
+
+  public static IvKeyEventKind kind(
+    final long packed)
+  {
+    return KINDS[(int) (packed & 0b11L)];
+  }
+
+  /**
+   * @param packed The packed event
+   *
+   * @return The key index
+   */
+
+  public static int index(
+    final long packed)
+  {
+    return (int) ((packed >>> INDEX_SHIFT) & INDEX_MASK);
+  }
+
+  /**
+   * @param packed The packed event
+   *
+   * @return The synthesized flag
+   */
+
+  public static boolean isSynthesized(
+    final long packed)
+  {
+    return (packed & 0b100L) != 0L;
+  }
+
+  /**
+   * @param packed The packed event
+   *
+   * @return The least significant {@value #TIMESTAMP_BITS} bits of the
+   * event time in nanoseconds
+   */
+
+  public static long timestamp(
+    final long packed)
+  {
+    return packed >>> TIMESTAMP_SHIFT;
+  }
+
+  /**
+   * Construct an event value from a packed event. Note that this allocates.
+   *
+   * @param packed The packed event
+   *
+   * @return The event
+   */
+
+  public static IvKeyEventType unpack(
+    final long packed)
+  {
+    final var index = index(packed);
+    return switch (kind(packed)) {
+      case KEY_ENTER -> new IvKeyEnter(index);
+      case KEY_EXIT -> new IvKeyExit(index);
+      case KEY_PRESSED -> new IvKeyPressed(index, isSynthesized(packed));
+      case KEY_RELEASED -> new IvKeyReleased(index, isSynthesized(packed));
+    };
+  }
+}
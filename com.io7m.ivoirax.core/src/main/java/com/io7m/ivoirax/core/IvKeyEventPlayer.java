@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A player that replays a recorded stream of key events into a piano by
+ * calling {@link IvPianoType#keyPress(int)} and
+ * {@link IvPianoType#keyRelease(int)} on the FX application thread.
+ *
+ * Playback is driven by an {@link AnimationTimer}. On each pulse, the
+ * player applies every event whose timestamp, scaled by the playback
+ * speed, has been reached, so all events due within a pulse are applied
+ * together. At {@link #SPEED_UNLIMITED}, timestamps are ignored and a fixed
+ * number of events is applied on each pulse, which makes the grouping of
+ * events into pulses independent of timing. Hover events in the stream
+ * are skipped, as there is no way to synthesize pointer movement.
+ *
+ * A player can be started at most once; to replay the same events again,
+ * create a new player.
+ */
+
+public final class IvKeyEventPlayer
+{
+  /**
+   * A speed that ignores timestamps and plays events as fast as possible.
+   */
+
+  public static final double SPEED_UNLIMITED = Double.POSITIVE_INFINITY;
+
+  private static final long FRAME_NANOS_NOMINAL = 1_000_000_000L / 60L;
+
+  private final IvPianoType piano;
+  private final IvKeyEventTimed[] events;
+  private final double speed;
+  private final int eventsPerPulse;
+  private final CompletableFuture<IvKeyEventPlayerStatistics> completion;
+  private final AnimationTimer timer;
+  private final AtomicBoolean startRequested;
+  private int position;
+  private boolean started;
+  private long timeStart;
+  private long timePrevious;
+  private long eventsApplied;
+  private long frames;
+  private long framesDropped;
+
+  private IvKeyEventPlayer(
+    final IvPianoType inPiano,
+    final List<IvKeyEventTimed> inEvents,
+    final double inSpeed,
+    final int inEventsPerPulse)
+  {
+    this.piano =
+      Objects.requireNonNull(inPiano, "piano");
+    this.events =
+      inEvents.toArray(new IvKeyEventTimed[0]);
+    this.speed =
+      inSpeed;
+    this.eventsPerPulse =
+      inEventsPerPulse;
+    this.completion =
+      new CompletableFuture<>();
+    this.startRequested =
+      new AtomicBoolean(false);
+    this.timer = new AnimationTimer()
+    {
+      @Override
+      public void handle(
+        final long now)
+      {
+        IvKeyEventPlayer.this.onPulse(now);
+      }
+    };
+  }
+
+  /**
+   * Create a player that replays events at the given speed. A speed of
+   * {@code 1.0} replays events in real time, a speed of {@code 4.0} replays
+   * events four times faster, and so on.
+   *
+   * @param piano  The piano
+   * @param events The events, in order of increasing time
+   * @param speed  The playback speed
+   *
+   * @return A player
+   */
+
+  public static IvKeyEventPlayer create(
+    final IvPianoType piano,
+    final List<IvKeyEventTimed> events,
+    final double speed)
+  {
+    if (!(speed > 0.0) || speed == SPEED_UNLIMITED) {
+      throw new IllegalArgumentException("Speed must be positive and finite.");
+    }
+    return new IvKeyEventPlayer(piano, events, speed, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a player that replays events as fast as possible, applying at
+   * most {@code eventsPerPulse} events on each pulse.
+   *
+   * @param piano          The piano
+   * @param events         The events
+   * @param eventsPerPulse The number of events applied per pulse
+   *
+   * @return A player
+   */
+
+  public static IvKeyEventPlayer createUnlimited(
+    final IvPianoType piano,
+    final List<IvKeyEventTimed> events,
+    final int eventsPerPulse)
+  {
+    if (eventsPerPulse <= 0) {
+      throw new IllegalArgumentException(
+        "Events per pulse must be positive.");
+    }
+    return new IvKeyEventPlayer(piano, events, SPEED_UNLIMITED, eventsPerPulse);
+  }
+
+  /**
+   * Start playback. This method may be called from any thread.
+   *
+   * @return A future that is completed with the playback statistics when
+   * playback finishes or is stopped
+   *
+   * @throws IllegalStateException If the player has already been started
+   */
+
+  public CompletableFuture<IvKeyEventPlayerStatistics> start()
+    throws IllegalStateException
+  {
+    if (!this.startRequested.compareAndSet(false, true)) {
+      throw new IllegalStateException("A player can only be started once.");
+    }
+    Platform.runLater(this::startOnFX);
+    return this.completion;
+  }
+
+  /**
+   * Stop playback. This method may be called from any thread.
+   */
+
+  public void stop()
+  {
+    Platform.runLater(this::finish);
+  }
+
+  /**
+   * @return The statistics so far; must be called on the FX application
+   * thread
+   */
+
+  public IvKeyEventPlayerStatistics statistics()
+  {
+    final var elapsedNanos = Math.max(0L, this.timePrevious - this.timeStart);
+    final var seconds = elapsedNanos / 1_000_000_000.0;
+    return new IvKeyEventPlayerStatistics(
+      this.eventsApplied,
+      seconds > 0.0 ? this.eventsApplied / seconds : 0.0,
+      this.frames,
+      this.framesDropped,
+      Duration.ofNanos(elapsedNanos)
+    );
+  }
+
+  private void startOnFX()
+  {
+    if (this.completion.isDone()) {
+      return;
+    }
+    this.started = false;
+    this.timer.start();
+  }
+
+  private void finish()
+  {
+    this.timer.stop();
+    this.completion.complete(this.statistics());
+  }
+
+  private void onPulse(
+    final long now)
+  {
+    if (!this.started) {
+      this.started = true;
+      this.timeStart = now;
+    } else {
+      this.framesDropped += framesMissed(now - this.timePrevious);
+    }
+    ++this.frames;
+    this.timePrevious = now;
+
+    final long due;
+    if (this.speed == SPEED_UNLIMITED) {
+      due = Long.MAX_VALUE;
+    } else {
+      due = (long) ((now - this.timeStart) * this.speed);
+    }
+
+    var applied = 0;
+    while (this.position < this.events.length
+           && applied < this.eventsPerPulse) {
+      final var timed = this.events[this.position];
+      if (timed.timeNanos() > due) {
+        break;
+      }
+      ++this.position;
+      if (this.apply(timed.event())) {
+        ++applied;
+      }
+    }
+
+    this.eventsApplied += applied;
+    if (this.position == this.events.length) {
+      this.finish();
+    }
+  }
+
+  /**
+   * @param elapsed The time between two pulses
+   *
+   * @return The number of nominal frames that fit into the gap between two
+   * pulses, excluding the frame of the later pulse itself
+   */
+
+  private static long framesMissed(
+    final long elapsed)
+  {
+    final var frameCount =
+      (elapsed + (FRAME_NANOS_NOMINAL / 2L)) / FRAME_NANOS_NOMINAL;
+    return Math.max(0L, frameCount - 1L);
+  }
+
+  private boolean apply(
+    final IvKeyEventType event)
+  {
+    return switch (event) {
+      case final IvKeyPressed pressed -> {
+        this.piano.keyPress(pressed.index());
+        yield true;
+      }
+      case final IvKeyReleased released -> {
+        this.piano.keyRelease(released.index());
+        yield true;
+      }
+      case final IvKeyEnter ignored -> false;
+      case final IvKeyExit ignored -> false;
+    };
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Statistics gathered by an {@link IvKeyEventPlayer}.
+ *
+ * @param eventsApplied   The number of presses and releases applied to the
+ *                        piano
+ * @param eventsPerSecond The achieved rate of applied events
+ * @param frames          The number of pulses during playback
+ * @param framesDropped   The number of nominal frame periods that
+ *                        passed without a pulse during playback
+ * @param elapsed         The elapsed playback time
+ */
+
+public record IvKeyEventPlayerStatistics(
+  long eventsApplied,
+  double eventsPerSecond,
+  long frames,
+  long framesDropped,
+  Duration elapsed)
+{
+  /**
+   * Statistics gathered by an {@link IvKeyEventPlayer}.
+   *
+   * @param eventsApplied   The number of presses and releases applied to the
+   *                        piano
+   * @param eventsPerSecond The achieved rate of applied events
+   * @param frames          The number of pulses during playback
+   * @param framesDropped   The number of nominal frame periods that
+   *                        passed without a pulse during playback
+   * @param elapsed         The elapsed playback time
+   */
+
+  public IvKeyEventPlayerStatistics
+  {
+    Objects.requireNonNull(elapsed, "elapsed");
+  }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A recorder that writes every key event produced by a piano into a compact
+ * binary log.
+ *
+ * The log is written through memory-mapped segments of a fixed size. Each
+ * event is encoded as a variable-length header integer (key index, kind,
+ * and synthesized flag) followed by a variable-length integer holding the
+ * number of nanoseconds since the previous event, so a typical event
+ * occupies between three and six bytes. Records never straddle segments.
+ * A background thread maps the next segment ahead of time, so recording an
+ * event on the FX application thread never allocates and never performs
+ * I/O beyond writing into mapped memory. If events arrive so quickly that
+ * a segment is filled before the background thread has mapped the next
+ * one, the events that do not fit are dropped and counted rather than
+ * blocking the FX application thread; see {@link #eventsDropped()}.
+ *
+ * The file header records the length of the log data, which is written
+ * through the file channel when the recorder is closed. Closing also
+ * flushes every segment that was written, and then truncates the file to
+ * the recorded data where the platform permits truncating a file that is
+ * still mapped; where it does not (Windows), the file keeps its trailing
+ * unused space and readers rely on the recorded length.
+ *
+ * Recordings are read back with {@link IvKeyEventLogReader}.
+ */
+
+public final class IvKeyEventRecorder implements AutoCloseable
+{
+  static final int MAGIC = 0x49564B4C;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 20;
+  static final int HEADER_LENGTH_OFFSET = 12;
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyEventRecorder.class);
+
+  /**
+   * The default size of log segments.
+   */
+
+  public static final int SEGMENT_SIZE_DEFAULT = 1 << 20;
+
+  private static final int RECORD_SIZE_MAXIMUM = 5 + 10;
+
+  private final FileChannel channel;
+  private final int segmentSize;
+  private final AtomicReference<Segment> segmentNext;
+  private final AtomicReference<MappedByteBuffer> segmentRetired;
+  private final Thread mapper;
+  private final IvKeySubscriptionType subscription;
+  private volatile boolean closed;
+  private volatile IOException mapperFailure;
+  private MappedByteBuffer segment;
+  private volatile long segmentBase;
+  private long timePrevious;
+  private long eventCount;
+  private long eventsDropped;
+
+  private IvKeyEventRecorder(
+    final IvPianoType piano,
+    final FileChannel inChannel,
+    final int inSegmentSize)
+    throws IOException
+  {
+    this.channel =
+      inChannel;
+    this.segmentSize =
+      inSegmentSize;
+    this.segmentNext =
+      new AtomicReference<>();
+    this.segmentRetired =
+      new AtomicReference<>();
+    this.segment =
+      this.map(0L);
+    this.segment.putInt(MAGIC);
+    this.segment.putInt(VERSION);
+    this.segment.putInt(inSegmentSize);
+    this.segment.putLong(0L);
+
+    this.mapper =
+      Thread.ofPlatform()
+        .daemon()
+        .name("com.io7m.ivoirax.recorder.mapper")
+        .start(this::runMapper);
+
+    this.timePrevious =
+      System.nanoTime();
+    this.subscription =
+      piano.addKeyEventListener(new Listener());
+  }
+
+  /**
+   * Start recording the events of the given piano into the given file,
+   * using segments of {@link #SEGMENT_SIZE_DEFAULT} bytes. The file is
+   * replaced if it exists.
+   *
+   * @param piano The piano
+   * @param file  The output file
+   *
+   * @return A recorder
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static IvKeyEventRecorder create(
+    final IvPianoType piano,
+    final Path file)
+    throws IOException
+  {
+    return create(piano, file, SEGMENT_SIZE_DEFAULT);
+  }
+
+  /**
+   * Start recording the events of the given piano into the given file.
+   * The file is replaced if it exists.
+   *
+   * @param piano       The piano
+   * @param file        The output file
+   * @param segmentSize The size of log segments
+   *
+   * @return A recorder
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static IvKeyEventRecorder create(
+    final IvPianoType piano,
+    final Path file,
+    final int segmentSize)
+    throws IOException
+  {
+    Objects.requireNonNull(piano, "piano");
+    Objects.requireNonNull(file, "file");
+
+    if (segmentSize < 64) {
+      throw new IllegalArgumentException("Segment size must be at least 64.");
+    }
+
+    final var channel =
+      FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+
+    try {
+      return new IvKeyEventRecorder(piano, channel, segmentSize);
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return The number of events recorded so far
+   */
+
+  public long eventCount()
+  {
+    return this.eventCount;
+  }
+
+  /**
+   * @return The number of events dropped because the next segment had not
+   * yet been mapped
+   */
+
+  public long eventsDropped()
+  {
+    return this.eventsDropped;
+  }
+
+  /**
+   * @return The number of bytes written so far
+   */
+
+  public long size()
+  {
+    return this.segmentBase + this.segment.position();
+  }
+
+  private MappedByteBuffer map(
+    final long position)
+    throws IOException
+  {
+    return this.channel.map(
+      FileChannel.MapMode.READ_WRITE,
+      position,
+      this.segmentSize
+    );
+  }
+
+  /**
+   * Flush segments retired by the FX application thread, and map the next
+   * segment ahead of use. A segment is retired before the mapper is woken
+   * to map its successor, and the FX application thread cannot retire
+   * another until that successor exists, so there is never more than one
+   * retired segment waiting.
+   */
+
+  private void runMapper()
+  {
+    while (!this.closed) {
+      this.forceRetired();
+      final var base = this.segmentBase + this.segmentSize;
+      final var existing = this.segmentNext.get();
+      if (existing == null || existing.base != base) {
+        try {
+          this.segmentNext.set(new Segment(base, this.map(base)));
+        } catch (final IOException e) {
+          this.mapperFailure = e;
+          return;
+        }
+      }
+      LockSupport.park(this);
+    }
+
+    this.forceRetired();
+    this.segmentNext.set(null);
+  }
+
+  private void forceRetired()
+  {
+    final var retired = this.segmentRetired.getAndSet(null);
+    if (retired != null) {
+      retired.force();
+    }
+  }
+
+  private void record(
+    final int header)
+  {
+    if (this.closed || this.mapperFailure != null) {
+      return;
+    }
+
+    final var time = System.nanoTime();
+    final var delta = Math.max(0L, time - this.timePrevious);
+    this.timePrevious = time;
+
+    if (this.segment.remaining() < RECORD_SIZE_MAXIMUM) {
+      if (!this.segmentAdvance()) {
+        ++this.eventsDropped;
+        return;
+      }
+    }
+
+    putVarLong(this.segment, header + 1L);
+    putVarLong(this.segment, delta);
+    ++this.eventCount;
+  }
+
+  /**
+   * Move to the next segment. The remainder of the current segment is
+   * left as zeroes, which readers recognize as padding. The segment is
+   * never mapped on the calling thread: if the mapper has not yet mapped
+   * it, the mapper is woken and {@code false} is returned.
+   */
+
+  private boolean segmentAdvance()
+  {
+    final var base = this.segmentBase + this.segmentSize;
+    final var next = this.segmentNext.get();
+    if (next == null || next.base != base) {
+      LockSupport.unpark(this.mapper);
+      return false;
+    }
+
+    /*
+     * The new base is published before the handoff slot is cleared, so the
+     * mapper never maps the segment that is already in use.
+     */
+
+    this.segmentRetired.set(this.segment);
+    this.segment = next.buffer;
+    this.segmentBase = base;
+    this.segmentNext.compareAndSet(next, null);
+    LockSupport.unpark(this.mapper);
+    return true;
+  }
+
+  private static void putVarLong(
+    final MappedByteBuffer buffer,
+    final long value)
+  {
+    var v = value;
+    while ((v & ~0x7FL) != 0L) {
+      buffer.put((byte) ((v & 0x7FL) | 0x80L));
+      v >>>= 7;
+    }
+    buffer.put((byte) v);
+  }
+
+  private static int header(
+    final IvKeyEventKind kind,
+    final int index,
+    final boolean isSynthesized)
+  {
+    return (index << 3) | (isSynthesized ? 0b100 : 0) | kind.ordinal();
+  }
+
+  /**
+   * Stop recording, flush all written data, and record its length in the
+   * file header. This must be called on the FX application thread.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.subscription.close();
+    LockSupport.unpark(this.mapper);
+
+    try {
+      this.mapper.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    final var size = this.size();
+    try {
+      this.segment.force();
+
+      final var length = ByteBuffer.allocate(8);
+      length.putLong(0, size);
+      this.channel.write(length, HEADER_LENGTH_OFFSET);
+      this.channel.force(false);
+      this.truncate(size);
+    } finally {
+      this.channel.close();
+    }
+
+    final var failure = this.mapperFailure;
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Truncate the file to the recorded data. Some platforms refuse to
+   * truncate a file while any part of it is mapped, and mappings are only
+   * released when their buffers are garbage collected, so failure is
+   * tolerated: the recorded length in the header remains authoritative.
+   */
+
+  private void truncate(
+    final long size)
+  {
+    try {
+      this.channel.truncate(size);
+    } catch (final IOException e) {
+      LOG.debug("Could not truncate a mapped log file: ", e);
+    }
+  }
+
+  private final class Listener
+    implements IvKeyEventListenerType
+  {
+    Listener()
+    {
+
+    }
+
+    @Override
+    public void onEnter(
+      final int index)
+    {
+      IvKeyEventRecorder.this.record(
+        header(IvKeyEventKind.KEY_ENTER, index, false));
+    }
+
+    @Override
+    public void onExit(
+      final int index)
+    {
+      IvKeyEventRecorder.this.record(
+        header(IvKeyEventKind.KEY_EXIT, index, false));
+    }
+
+    @Override
+    public void onPress(
+      final int index,
+      final boolean isSynthesized)
+    {
+      IvKeyEventRecorder.this.record(
+        header(IvKeyEventKind.KEY_PRESSED, index, isSynthesized));
+    }
+
+    @Override
+    public void onRelease(
+      final int index,
+      final boolean isSynthesized)
+    {
+      IvKeyEventRecorder.this.record(
+        header(IvKeyEventKind.KEY_RELEASED, index, isSynthesized));
+    }
+  }
+
+  private record Segment(
+    long base,
+    MappedByteBuffer buffer)
+  {
+
+  }
+}
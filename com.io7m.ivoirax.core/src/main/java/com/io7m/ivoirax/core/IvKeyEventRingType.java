@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * A preallocated ring buffer into which a piano publishes every key event
+ * as a packed {@code long} (see {@link IvKeyEventPacking}). Consumers on any
+ * thread read the ring through their own cursors, without locks, callbacks,
+ * or allocation.
+ *
+ * The piano never waits for consumers. A consumer that falls more than
+ * {@link #capacity()} events behind has the oldest unread events
+ * overwritten, and its cursor skips ahead and counts the lost events.
+ *
+ * @see IvPianoType#keyEventRing()
+ */
+
+public interface IvKeyEventRingType
+{
+  /**
+   * @return The number of events the ring holds
+   */
+
+  int capacity();
+
+  /**
+   * Create a new cursor. The cursor observes events published after it
+   * was created.
+   *
+   * @return A new cursor
+   */
+
+  IvKeyEventCursorType newCursor();
+}
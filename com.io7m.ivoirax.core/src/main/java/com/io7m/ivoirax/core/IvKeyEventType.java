@@ -24,5 +24,15 @@ package com.io7m.ivoirax.core;
 public sealed interface IvKeyEventType
   permits IvKeyExit, IvKeyEnter, IvKeyPressed, IvKeyReleased
 {
+  /**
+   * @return The key index
+   */
 
+  int index();
+
+  /**
+   * @return The kind of event
+   */
+
+  IvKeyEventKind kind();
 }
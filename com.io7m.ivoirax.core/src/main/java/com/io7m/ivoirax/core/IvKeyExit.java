@@ -27,6 +27,12 @@ public record IvKeyExit(
   int index)
   implements IvKeyEventType
 {
+  @Override
+  public IvKeyEventKind kind()
+  {
+    return IvKeyEventKind.KEY_EXIT;
+  }
+
   @Override
   public String toString()
   {
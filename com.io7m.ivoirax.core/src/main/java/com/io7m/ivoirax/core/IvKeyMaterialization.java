@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * The strategy used by node-based pianos to create nodes for keys.
+ */
+
+public enum IvKeyMaterialization
+{
+  /**
+   * A node is created for every key when the piano is created.
+   */
+
+  MATERIALIZE_ALL,
+
+  /**
+   * Nodes are created only for the octaves that intersect the visible
+   * region of the piano (such as the viewport of an enclosing
+   * {@link javafx.scene.control.ScrollPane}), and are recycled as the
+   * visible region changes. Key state and key events are unaffected by
+   * whether or not a key currently has a node.
+   */
+
+  MATERIALIZE_VISIBLE
+}
@@ -29,6 +29,12 @@ public record IvKeyPressed(
   boolean isSynthesized)
   implements IvKeyEventType
 {
+  @Override
+  public IvKeyEventKind kind()
+  {
+    return IvKeyEventKind.KEY_PRESSED;
+  }
+
   @Override
   public String toString()
   {
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+/**
+ * A view of the pressed keys of a piano that may be read from any thread.
+ * Reading the view never blocks, never allocates (with the exception of
+ * {@link #snapshot()}), and never requires a hop to the FX application
+ * thread.
+ *
+ * @see IvPianoType#pressedView()
+ */
+
+public interface IvKeyPressedViewType
+{
+  /**
+   * @return The number of keys
+   */
+
+  int keyCount();
+
+  /**
+   * @return The number of 64-bit words required to hold the pressed state
+   * of every key
+   *
+   * @see #copyInto(long[])
+   */
+
+  int wordCount();
+
+  /**
+   * @param index The key index
+   *
+   * @return {@code true} if the key is currently pressed
+   */
+
+  boolean isPressed(
+    int index);
+
+  /**
+   * Copy the pressed state of every key into the given array, such that
+   * bit {@code i % 64} of word {@code i / 64} is set if key {@code i} is
+   * pressed. The copy is consistent: it reflects the state of the keyboard
+   * at a single point in time, even if a chord was pressed or released in
+   * one operation with {@link IvPianoType#setPressedKeys(java.util.BitSet)}.
+   *
+   * @param words The output array, with at least {@link #wordCount()}
+   *              elements
+   */
+
+  void copyInto(
+    long[] words);
+
+  /**
+   * Take a consistent immutable snapshot of the pressed keys. Note that
+   * this allocates.
+   *
+   * @return The pressed keys
+   */
+
+  IvKeySet snapshot();
+}
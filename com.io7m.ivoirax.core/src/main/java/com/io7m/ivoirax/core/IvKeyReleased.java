@@ -29,6 +29,12 @@ public record IvKeyReleased(
   boolean isSynthesized)
   implements IvKeyEventType
 {
+  @Override
+  public IvKeyEventKind kind()
+  {
+    return IvKeyEventKind.KEY_RELEASED;
+  }
+
   @Override
   public String toString()
   {
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable set of key indices, stored as a bitset.
+ */
+
+public final class IvKeySet
+{
+  private static final IvKeySet EMPTY =
+    new IvKeySet(new long[0]);
+
+  private final long[] words;
+  private final int size;
+
+  private IvKeySet(
+    final long[] inWords)
+  {
+    this.words = inWords;
+
+    var count = 0;
+    for (final var word : inWords) {
+      count += Long.bitCount(word);
+    }
+    this.size = count;
+  }
+
+  /**
+   * @return The empty set
+   */
+
+  public static IvKeySet empty()
+  {
+    return EMPTY;
+  }
+
+  /**
+   * Create a set from the given words. Bit {@code i} of word {@code w}
+   * represents key {@code (w * 64) + i}. The words are copied.
+   *
+   * @param words The words
+   *
+   * @return A set of keys
+   */
+
+  public static IvKeySet ofWords(
+    final long[] words)
+  {
+    Objects.requireNonNull(words, "words");
+
+    var length = words.length;
+    while (length > 0 && words[length - 1] == 0L) {
+      --length;
+    }
+    if (length == 0) {
+      return EMPTY;
+    }
+    return new IvKeySet(Arrays.copyOf(words, length));
+  }
+
+  /**
+   * Create a set from the given bitset.
+   *
+   * @param bits The bitset
+   *
+   * @return A set of keys
+   */
+
+  public static IvKeySet ofBitSet(
+    final BitSet bits)
+  {
+    return ofWords(bits.toLongArray());
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return {@code true} if the set contains the given key
+   */
+
+  public boolean contains(
+    final int index)
+  {
+    if (index < 0) {
+      return false;
+    }
+    final var word = index >>> 6;
+    if (word >= this.words.length) {
+      return false;
+    }
+    return (this.words[word] & (1L << index)) != 0L;
+  }
+
+  /**
+   * @return The number of keys in the set
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @return {@code true} if the set is empty
+   */
+
+  public boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  /**
+   * @return The lowest key in the set, or {@code -1} if the set is empty
+   */
+
+  public int lowest()
+  {
+    for (int word = 0; word < this.words.length; ++word) {
+      final var bits = this.words[word];
+      if (bits != 0L) {
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The highest key in the set, or {@code -1} if the set is empty
+   */
+
+  public int highest()
+  {
+    for (int word = this.words.length - 1; word >= 0; --word) {
+      final var bits = this.words[word];
+      if (bits != 0L) {
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Call the given consumer for each key in the set, in ascending order.
+   *
+   * @param consumer The consumer
+   */
+
+  public void forEach(
+    final IntConsumer consumer)
+  {
+    Objects.requireNonNull(consumer, "consumer");
+
+    for (int word = 0; word < this.words.length; ++word) {
+      var bits = this.words[word];
+      while (bits != 0L) {
+        consumer.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+        bits &= bits - 1L;
+      }
+    }
+  }
+
+  /**
+   * @return The set as a new mutable bitset
+   */
+
+  public BitSet toBitSet()
+  {
+    return BitSet.valueOf(this.words);
+  }
+
+  @Override
+  public boolean equals(
+    final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || !this.getClass().equals(o.getClass())) {
+      return false;
+    }
+    final var other = (IvKeySet) o;
+    return Arrays.equals(this.words, other.words);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Arrays.hashCode(this.words);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[IvKeySet %s]".formatted(this.toBitSet());
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import java.util.Objects;
+
+/**
+ * An immutable set of colors used to draw a piano. Themes are plain values
+ * and can be freely shared between any number of pianos.
+ *
+ * @param colorKeyNatural          The color used for natural (white) keys when not over or pressed
+ * @param colorKeyNaturalOver      The color used for natural (white) keys when the cursor is over them
+ * @param colorKeyNaturalPressed   The color used for natural (white) keys when the keys are pressed
+ * @param colorKeyAccidental       The color used for accidental (black) keys when not over or pressed
+ * @param colorKeyAccidentalOver   The color used for accidental (black) keys when the cursor is over them
+ * @param colorKeyAccidentalPressed The color used for accidental (black) keys when the keys are pressed
+ * @param colorStrokeKeyNatural    The stroke color used for natural (white) keys
+ * @param colorStrokeKeyAccidental The stroke color used for accidental (black) keys
+ * @param colorKeyText             The color used for the text on keys
+ */
+
+public record IvPianoTheme(
+  Paint colorKeyNatural,
+  Paint colorKeyNaturalOver,
+  Paint colorKeyNaturalPressed,
+  Paint colorKeyAccidental,
+  Paint colorKeyAccidentalOver,
+  Paint colorKeyAccidentalPressed,
+  Paint colorStrokeKeyNatural,
+  Paint colorStrokeKeyAccidental,
+  Paint colorKeyText)
+{
+  private static final IvPianoTheme DEFAULT =
+    new IvPianoTheme(
+      Color.gray(1.0),
+      Color.gray(0.9),
+      Color.gray(0.8),
+      Color.gray(0.1),
+      Color.gray(0.3),
+      Color.gray(0.5),
+      Color.gray(0.0),
+      Color.gray(0.0),
+      Color.gray(0.0)
+    );
+
+  /**
+   * An immutable set of colors used to draw a piano.
+   *
+   * @param colorKeyNatural          The color used for natural (white) keys when not over or pressed
+   * @param colorKeyNaturalOver      The color used for natural (white) keys when the cursor is over them
+   * @param colorKeyNaturalPressed   The color used for natural (white) keys when the keys are pressed
+   * @param colorKeyAccidental       The color used for accidental (black) keys when not over or pressed
+   * @param colorKeyAccidentalOver   The color used for accidental (black) keys when the cursor is over them
+   * @param colorKeyAccidentalPressed The color used for accidental (black) keys when the keys are pressed
+   * @param colorStrokeKeyNatural    The stroke color used for natural (white) keys
+   * @param colorStrokeKeyAccidental The stroke color used for accidental (black) keys
+   * @param colorKeyText             The color used for the text on keys
+   */
+
+  public IvPianoTheme
+  {
+    Objects.requireNonNull(colorKeyNatural, "colorKeyNatural");
+    Objects.requireNonNull(colorKeyNaturalOver, "colorKeyNaturalOver");
+    Objects.requireNonNull(colorKeyNaturalPressed, "colorKeyNaturalPressed");
+    Objects.requireNonNull(colorKeyAccidental, "colorKeyAccidental");
+    Objects.requireNonNull(colorKeyAccidentalOver, "colorKeyAccidentalOver");
+    Objects.requireNonNull(colorKeyAccidentalPressed, "colorKeyAccidentalPressed");
+    Objects.requireNonNull(colorStrokeKeyNatural, "colorStrokeKeyNatural");
+    Objects.requireNonNull(colorStrokeKeyAccidental, "colorStrokeKeyAccidental");
+    Objects.requireNonNull(colorKeyText, "colorKeyText");
+  }
+
+  /**
+   * @return The default theme (black and white keys)
+   */
+
+  public static IvPianoTheme defaultTheme()
+  {
+    return DEFAULT;
+  }
+}
@@ -17,9 +17,16 @@
 
 package com.io7m.ivoirax.core;
 
-import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.scene.paint.Paint;
 
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.IntConsumer;
+
 /**
  * The base type of piano keyboards.
  */
@@ -27,50 +34,62 @@ import javafx.scene.paint.Paint;
 public interface IvPianoType
 {
   /**
-   * @return The stroke color used for accidental (black) keys when not over or pressed
+   * The theme used to draw the piano. Setting a new theme updates all keys
+   * in a single pass, preserving the over and pressed states of keys.
+   * The property must not be set to {@code null}.
+   *
+   * @return The theme used to draw the piano
    */
 
-  default Paint colorStrokeKeyAccidental()
-  {
-    return this.colorStrokeKeyAccidentalProperty().get();
-  }
+  ObjectProperty<IvPianoTheme> themeProperty();
 
   /**
-   * @return The stroke color used for accidental (black) keys when not over or pressed
+   * @return The theme used to draw the piano
    */
 
-  SimpleObjectProperty<Paint> colorStrokeKeyAccidentalProperty();
+  default IvPianoTheme theme()
+  {
+    return this.themeProperty().get();
+  }
 
   /**
-   * @return The stroke color used for natural (white) keys when not over or pressed
+   * Set the theme used to draw the piano.
+   *
+   * @param theme The theme
    */
 
-  default Paint colorStrokeKeyNatural()
+  default void setTheme(
+    final IvPianoTheme theme)
   {
-    return this.colorStrokeKeyNaturalProperty().get();
+    this.themeProperty().set(Objects.requireNonNull(theme, "theme"));
   }
 
   /**
-   * @return The stroke color used for natural (white) keys when not over or pressed
+   * @return The stroke color used for accidental (black) keys
    */
 
-  SimpleObjectProperty<Paint> colorStrokeKeyNaturalProperty();
-
+  default Paint colorStrokeKeyAccidental()
+  {
+    return this.theme().colorStrokeKeyAccidental();
+  }
 
   /**
-   * @return The color used for accidental (black) keys when not over or pressed
+   * @return The stroke color used for natural (white) keys
    */
 
-  default Paint colorKeyAccidental()
+  default Paint colorStrokeKeyNatural()
   {
-    return this.colorKeyAccidentalProperty().get();
+    return this.theme().colorStrokeKeyNatural();
   }
 
   /**
    * @return The color used for accidental (black) keys when not over or pressed
    */
 
-  SimpleObjectProperty<Paint> colorKeyAccidentalProperty();
+  default Paint colorKeyAccidental()
+  {
+    return this.theme().colorKeyAccidental();
+  }
 
   /**
    * @return The color used for accidental (black) keys when the cursor is over them
@@ -78,105 +97,273 @@ public interface IvPianoType
 
   default Paint colorKeyAccidentalOver()
   {
-    return this.colorKeyAccidentalOverProperty().get();
+    return this.theme().colorKeyAccidentalOver();
   }
 
-  /**
-   * @return The color used for accidental (black) keys when the cursor is over them
-   */
-
-  SimpleObjectProperty<Paint> colorKeyAccidentalOverProperty();
-
   /**
    * @return The color used for accidental (black) keys when the keys are pressed
    */
 
   default Paint colorKeyAccidentalPressed()
   {
-    return this.colorKeyAccidentalPressedProperty().get();
+    return this.theme().colorKeyAccidentalPressed();
   }
 
   /**
-   * @return The color used for accidental (black) keys when the keys are pressed
+   * @return The color used for natural (white) keys when not over or pressed
    */
 
-  SimpleObjectProperty<Paint> colorKeyAccidentalPressedProperty();
+  default Paint colorKeyNatural()
+  {
+    return this.theme().colorKeyNatural();
+  }
 
   /**
-   * @return The color used for natural (white) keys when not over or pressed
+   * @return The color used for natural (white) keys when the cursor is over them
    */
 
-  default Paint colorKeyNatural()
+  default Paint colorKeyNaturalOver()
   {
-    return this.colorKeyNaturalProperty().get();
+    return this.theme().colorKeyNaturalOver();
   }
 
   /**
-   * @return The color used for natural (white) keys when not over or pressed
+   * @return The color used for natural (white) keys when the keys are pressed
    */
 
-  SimpleObjectProperty<Paint> colorKeyNaturalProperty();
+  default Paint colorKeyNaturalPressed()
+  {
+    return this.theme().colorKeyNaturalPressed();
+  }
 
   /**
-   * @return The color used for natural (white) keys when the cursor is over them
+   * @return The color used for the text on keys
    */
 
-  default Paint colorKeyNaturalOver()
+  default Paint colorKeyText()
   {
-    return this.colorKeyNaturalOverProperty().get();
+    return this.theme().colorKeyText();
   }
 
   /**
-   * @return The color used for natural (white) keys when the cursor is over them
+   * @return The number of keys on the keyboard
    */
 
-  SimpleObjectProperty<Paint> colorKeyNaturalOverProperty();
+  int keyCount();
 
   /**
-   * @return The color used for natural (white) keys when the keys are pressed
+   * Set the key event handler. The handler replaces any listener set with
+   * {@link #setOnKeyEventListener(IvKeyEventListenerType)}.
+   *
+   * @param handler The handler
    */
 
-  default Paint colorKeyNaturalPressed()
-  {
-    return this.colorKeyNaturalPressedProperty().get();
-  }
+  void setOnKeyEventHandler(
+    IvKeyEventHandlerType handler);
 
   /**
-   * @return The color used for natural (white) keys when the keys are pressed
+   * Set the key event handler, delivering events to the handler on the given
+   * executor rather than on the FX application thread. The FX application
+   * thread only enqueues events, and never waits for the handler. Events
+   * that concern the same key are delivered in the order that they were
+   * produced, and are never delivered concurrently; events that concern
+   * different keys may be delivered concurrently if the executor permits
+   * it. The handler replaces any handler or listener that was previously
+   * set. Any executor may be used, including those returned by
+   * {@link java.util.concurrent.Executors#newVirtualThreadPerTaskExecutor()}.
+   *
+   * @param handler  The handler
+   * @param executor The executor
    */
 
-  SimpleObjectProperty<Paint> colorKeyNaturalPressedProperty();
+  void setOnKeyEventHandler(
+    IvKeyEventHandlerType handler,
+    Executor executor);
 
   /**
-   * @return The color used for the text on keys
+   * Set the key event listener. The listener replaces any handler set with
+   * {@link #setOnKeyEventHandler(IvKeyEventHandlerType)}, and receives
+   * exactly the same events without any event values being allocated.
+   *
+   * @param listener The listener
    */
 
-  default Paint colorKeyText()
-  {
-    return this.colorKeyTextProperty().get();
-  }
+  void setOnKeyEventListener(
+    IvKeyEventListenerType listener);
 
   /**
-   * @return The color used for the text on keys
+   * Set the key event listener, delivering only events of the given kinds.
+   * The listener replaces any handler or listener that was previously set.
+   * Events of kinds that no handler or listener wants are never dispatched,
+   * and so a listener that does not want {@link IvKeyEventKind#KEY_ENTER}
+   * or {@link IvKeyEventKind#KEY_EXIT} events does not cause hover events
+   * to be published.
+   *
+   * @param listener The listener
+   * @param kinds    The kinds of events the listener wants
+   *
+   * @see #setOnKeyEventListener(IvKeyEventListenerType)
    */
 
-  SimpleObjectProperty<Paint> colorKeyTextProperty();
+  void setOnKeyEventListener(
+    IvKeyEventListenerType listener,
+    Set<IvKeyEventKind> kinds);
 
   /**
-   * @return The number of keys on the keyboard
+   * Add a key event handler. The handler receives events in addition to the
+   * handler set with {@link #setOnKeyEventHandler(IvKeyEventHandlerType)}
+   * and any other added handlers. Exceptions raised by one handler do not
+   * prevent events being delivered to the others. This method may be called
+   * from any thread.
+   *
+   * @param handler The handler
+   *
+   * @return A subscription that can be closed to remove the handler
    */
 
-  int keyCount();
+  IvKeySubscriptionType addKeyEventHandler(
+    IvKeyEventHandlerType handler);
 
   /**
-   * Set the key event handler.
+   * Add a key event handler that receives only events of the given kinds.
+   * Events of kinds that no handler or listener wants are never constructed
+   * or dispatched.
    *
    * @param handler The handler
+   * @param kinds   The kinds of events the handler wants
+   *
+   * @return A subscription that can be closed to remove the handler
+   *
+   * @see #addKeyEventHandler(IvKeyEventHandlerType)
    */
 
-  void setOnKeyEventHandler(
+  IvKeySubscriptionType addKeyEventHandler(
+    IvKeyEventHandlerType handler,
+    Set<IvKeyEventKind> kinds);
+
+  /**
+   * Remove a key event handler previously added with
+   * {@link #addKeyEventHandler(IvKeyEventHandlerType)}. If the handler was
+   * added more than once, all of its subscriptions are closed. This method
+   * may be called from any thread.
+   *
+   * @param handler The handler
+   */
+
+  void removeKeyEventHandler(
     IvKeyEventHandlerType handler);
 
+  /**
+   * Add a key event listener. This is the primitive equivalent of
+   * {@link #addKeyEventHandler(IvKeyEventHandlerType)}.
+   *
+   * @param listener The listener
+   *
+   * @return A subscription that can be closed to remove the listener
+   */
+
+  IvKeySubscriptionType addKeyEventListener(
+    IvKeyEventListenerType listener);
+
+  /**
+   * Add a key event listener that receives only events of the given kinds.
+   *
+   * @param listener The listener
+   * @param kinds    The kinds of events the listener wants
+   *
+   * @return A subscription that can be closed to remove the listener
+   *
+   * @see #addKeyEventHandler(IvKeyEventHandlerType, Set)
+   */
+
+  IvKeySubscriptionType addKeyEventListener(
+    IvKeyEventListenerType listener,
+    Set<IvKeyEventKind> kinds);
+
+  /**
+   * Remove a key event listener previously added with
+   * {@link #addKeyEventListener(IvKeyEventListenerType)}.
+   *
+   * @param listener The listener
+   */
+
+  void removeKeyEventListener(
+    IvKeyEventListenerType listener);
+
+  /**
+   * Add a key event batch listener. Rather than receiving events one at a
+   * time, the listener receives all of the events produced during each
+   * JavaFX pulse as a single batch, delivered on the FX application thread
+   * after the pulse's layout pass. This method may be called from any
+   * thread.
+   *
+   * @param listener The listener
+   *
+   * @return A subscription that can be closed to remove the listener
+   */
+
+  IvKeySubscriptionType addKeyEventBatchListener(
+    IvKeyEventBatchListenerType listener);
+
+  /**
+   * Remove a key event batch listener previously added with
+   * {@link #addKeyEventBatchListener(IvKeyEventBatchListenerType)}.
+   *
+   * @param listener The listener
+   */
+
+  void removeKeyEventBatchListener(
+    IvKeyEventBatchListenerType listener);
+
+  /**
+   * Create a publisher of key events. Each subscriber to the publisher has
+   * its own buffer of at most {@code capacity} pending events, and events
+   * are only delivered as the subscriber requests them. If a subscriber
+   * falls behind and its buffer fills, the given overflow policy decides
+   * which events are discarded, or whether the subscription fails. Events
+   * are delivered either on the FX application thread, or on whichever
+   * thread called {@link Flow.Subscription#request(long)}.
+   *
+   * @param policy   The overflow policy
+   * @param capacity The maximum number of pending events per subscriber
+   *
+   * @return A publisher of key events
+   */
+
+  Flow.Publisher<IvKeyEventType> keyEventPublisher(
+    IvKeyEventOverflowPolicy policy,
+    int capacity);
+
+  /**
+   * Create a publisher of key events that drops hover events first, and
+   * that buffers up to {@code 1024} events per subscriber.
+   *
+   * @return A publisher of key events
+   *
+   * @see #keyEventPublisher(IvKeyEventOverflowPolicy, int)
+   */
+
+  default Flow.Publisher<IvKeyEventType> keyEventPublisher()
+  {
+    return this.keyEventPublisher(IvKeyEventOverflowPolicy.DROP_HOVER, 1024);
+  }
+
+  /**
+   * Obtain the piano's ring buffer of packed key events, creating it if
+   * necessary. Once created, the piano publishes every key event into the
+   * ring, and consumers on any thread may poll the ring through cursors
+   * without locks or allocation. This method may be called from any thread.
+   *
+   * @return The ring buffer of key events
+   *
+   * @throws UnsupportedOperationException If the piano has more than
+   *                                       {@link IvKeyEventPacking#KEY_COUNT_MAXIMUM}
+   *                                       keys
+   */
+
+  IvKeyEventRingType keyEventRing()
+    throws UnsupportedOperationException;
+
   /**
    * Perform a synthetic keypress. This is in contrast to keypresses that
    * occurred via the mouse.
@@ -196,6 +383,86 @@ public interface IvPianoType
   void keyRelease(
     int index);
 
+  /**
+   * Perform a synthetic keypress from any thread. Unlike
+   * {@link #keyPress(int)}, this method does not need to be called on the
+   * FX application thread. Presses and releases submitted this way are
+   * queued without locking and applied together once per pulse. If a key
+   * is pressed and released within a single pulse, the release is applied
+   * on the following pulse so that the key is visibly pressed for at least
+   * one frame. Any number of presses and releases of one key within a
+   * single pulse collapse into one visible press, so the piano never falls
+   * behind the input however quickly a key is repeated. This method never
+   * blocks, including when called on the FX application thread; if the
+   * queue is full, only the most recent request for each key is kept until
+   * the next pulse.
+   *
+   * @param index The key index
+   *
+   * @see #keyReleaseLater(int)
+   */
+
+  void keyPressLater(
+    int index);
+
+  /**
+   * Release a key from any thread.
+   *
+   * @param index The key index
+   *
+   * @see #keyPressLater(int)
+   */
+
+  void keyReleaseLater(
+    int index);
+
+  /**
+   * Perform synthetic keypresses for all the given keys. Keys that are
+   * already pressed, and indices outside of the keyboard, are ignored.
+   * Events are published in ascending key order.
+   *
+   * @param indices The key indices
+   *
+   * @throws IllegalStateException If called from a key event listener
+   *                               while another bulk change is being
+   *                               applied
+   */
+
+  void keyPressAll(
+    int[] indices);
+
+  /**
+   * Release all the given keys. Keys that are not pressed, and indices
+   * outside of the keyboard, are ignored. Events are published in
+   * ascending key order.
+   *
+   * @param indices The key indices
+   *
+   * @throws IllegalStateException If called from a key event listener
+   *                               while another bulk change is being
+   *                               applied
+   */
+
+  void keyReleaseAll(
+    int[] indices);
+
+  /**
+   * Set the pressed state of the entire keyboard at once. Keys set in the
+   * given bitset are pressed (synthetically) and all other keys are
+   * released. Only keys whose state actually changes are updated, and
+   * events are published in ascending key order. Indices outside of the
+   * keyboard are ignored.
+   *
+   * @param pressed The keys that should be pressed
+   *
+   * @throws IllegalStateException If called from a key event listener
+   *                               while another bulk change is being
+   *                               applied
+   */
+
+  void setPressedKeys(
+    BitSet pressed);
+
   /**
    * @param index The key index
    *
@@ -204,4 +471,51 @@ public interface IvPianoType
 
   boolean keyIsPressed(
     int index);
+
+  /**
+   * Call the given consumer for each pressed key, in ascending order. The
+   * consumer must not change the pressed state of keys.
+   *
+   * @param consumer The consumer
+   */
+
+  void forEachPressed(
+    IntConsumer consumer);
+
+  /**
+   * @return The number of keys that are currently pressed
+   */
+
+  int pressedCount();
+
+  /**
+   * @return The lowest key that is currently pressed, or {@code -1} if no keys are pressed
+   */
+
+  int lowestPressed();
+
+  /**
+   * @return The highest key that is currently pressed, or {@code -1} if no keys are pressed
+   */
+
+  int highestPressed();
+
+  /**
+   * Take an immutable snapshot of the keys that are currently pressed.
+   * Repeated calls return the same snapshot until a key changes state.
+   *
+   * @return The pressed keys
+   */
+
+  IvKeySet pressedSnapshot();
+
+  /**
+   * Obtain a view of the keys that are currently pressed that, unlike the
+   * other methods on this interface, may be read from any thread without
+   * locking. The view is updated whenever a key changes state.
+   *
+   * @return The pressed keys
+   */
+
+  IvKeyPressedViewType pressedView();
 }
@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEventBatchListenerType;
+import com.io7m.ivoirax.core.IvKeyEventBatchType;
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeySubscriptionType;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A listener that accumulates key events and delivers them to batch
+ * listeners once per JavaFX pulse.
+ *
+ * Events are accumulated into one of two buffers of packed integers. When
+ * the first event of a batch arrives, a pulse is requested, and the
+ * batcher's post-layout pulse listener on the owner's scene swaps the
+ * buffers and delivers the full one to each batch listener. The delivered
+ * buffer is then cleared and becomes the buffer that accumulates the
+ * following batch, so no storage is allocated once the buffers have grown
+ * to accommodate the largest batch seen. Events that are produced while a
+ * batch is being delivered go into the other buffer and are delivered on
+ * the next pulse.
+ *
+ * If the owner is not in a scene, there are no pulses, and so events are
+ * delivered immediately as batches of one. A batch listener may itself
+ * cause further events, for example by pressing a key; such events are
+ * never delivered reentrantly, but are delivered as a following batch once
+ * the current batch has been delivered to every listener.
+ *
+ * The batcher only subscribes to the dispatcher whilst it has at least one
+ * batch listener.
+ */
+
+public final class IvKeyEventBatcher
+  implements IvKeyEventListenerType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyEventBatcher.class);
+
+  private static final Subscription[] SUBSCRIPTIONS_NONE =
+    new Subscription[0];
+
+  private final Node owner;
+  private final IvKeyEventDispatcher dispatcher;
+  private final Runnable pulseListener;
+  private final Object subscriptionsLock;
+  private volatile Subscription[] subscriptions;
+  private Buffer bufferFilling;
+  private Buffer bufferSpare;
+  private boolean pulseRequested;
+  private boolean flushing;
+  private IvKeySubscriptionType dispatcherSubscription;
+
+  /**
+   * A listener that delivers key events once per pulse.
+   *
+   * @param inOwner      The node whose scene provides pulses
+   * @param inDispatcher The dispatcher that produces events
+   */
+
+  public IvKeyEventBatcher(
+    final Node inOwner,
+    final IvKeyEventDispatcher inDispatcher)
+  {
+    this.owner =
+      Objects.requireNonNull(inOwner, "owner");
+    this.dispatcher =
+      Objects.requireNonNull(inDispatcher, "dispatcher");
+    this.pulseListener =
+      this::flush;
+    this.subscriptionsLock =
+      new Object();
+    this.subscriptions =
+      SUBSCRIPTIONS_NONE;
+    this.bufferFilling =
+      new Buffer();
+    this.bufferSpare =
+      new Buffer();
+
+    this.owner.sceneProperty()
+      .addListener((o, sceneOld, sceneNew) -> {
+        this.onSceneChanged(sceneOld, sceneNew);
+      });
+    this.onSceneChanged(null, this.owner.getScene());
+  }
+
+  private void onSceneChanged(
+    final Scene sceneOld,
+    final Scene sceneNew)
+  {
+    if (sceneOld != null) {
+      sceneOld.removePostLayoutPulseListener(this.pulseListener);
+    }
+    if (sceneNew != null) {
+      sceneNew.addPostLayoutPulseListener(this.pulseListener);
+    } else {
+      this.flush();
+    }
+  }
+
+  /**
+   * Subscribe a batch listener. This may be called from any thread.
+   *
+   * @param listener The listener
+   *
+   * @return The subscription
+   */
+
+  public IvKeySubscriptionType subscribe(
+    final IvKeyEventBatchListenerType listener)
+  {
+    final var subscription =
+      new Subscription(Objects.requireNonNull(listener, "listener"));
+
+    synchronized (this.subscriptionsLock) {
+      final var existing = this.subscriptions;
+      final var updated = Arrays.copyOf(existing, existing.length + 1);
+      updated[existing.length] = subscription;
+      this.subscriptionsSet(updated);
+    }
+    return subscription;
+  }
+
+  /**
+   * Cancel every subscription of the given batch listener. This may be
+   * called from any thread.
+   *
+   * @param listener The listener
+   */
+
+  public void unsubscribeAll(
+    final IvKeyEventBatchListenerType listener)
+  {
+    synchronized (this.subscriptionsLock) {
+      this.subscriptionsSet(
+        Arrays.stream(this.subscriptions)
+          .filter(s -> s.listener != listener)
+          .toArray(Subscription[]::new)
+      );
+    }
+  }
+
+  private void unsubscribe(
+    final Subscription subscription)
+  {
+    synchronized (this.subscriptionsLock) {
+      this.subscriptionsSet(
+        Arrays.stream(this.subscriptions)
+          .filter(s -> s != subscription)
+          .toArray(Subscription[]::new)
+      );
+    }
+  }
+
+  private void subscriptionsSet(
+    final Subscription[] updated)
+  {
+    this.subscriptions = updated;
+
+    if (updated.length == 0) {
+      if (this.dispatcherSubscription != null) {
+        this.dispatcherSubscription.close();
+        this.dispatcherSubscription = null;
+      }
+    } else if (this.dispatcherSubscription == null) {
+      this.dispatcherSubscription = this.dispatcher.subscribe(this, this);
+    }
+  }
+
+  @Override
+  public void onEnter(
+    final int index)
+  {
+    this.record(IvKeyEventKind.KEY_ENTER, index, false);
+  }
+
+  @Override
+  public void onExit(
+    final int index)
+  {
+    this.record(IvKeyEventKind.KEY_EXIT, index, false);
+  }
+
+  @Override
+  public void onPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.record(IvKeyEventKind.KEY_PRESSED, index, isSynthesized);
+  }
+
+  @Override
+  public void onRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.record(IvKeyEventKind.KEY_RELEASED, index, isSynthesized);
+  }
+
+  private void record(
+    final IvKeyEventKind kind,
+    final int index,
+    final boolean isSynthesized)
+  {
+    if (this.subscriptions.length == 0) {
+      return;
+    }
+
+    this.bufferFilling.add(kind, index, isSynthesized);
+
+    if (this.owner.getScene() == null) {
+      this.flush();
+      return;
+    }
+
+    if (!this.pulseRequested) {
+      this.pulseRequested = true;
+      Platform.requestNextPulse();
+    }
+  }
+
+  private void flush()
+  {
+    /*
+     * A listener that causes events during delivery would otherwise swap
+     * the buffer that is being delivered back into use. Events recorded
+     * during delivery stay in the filling buffer: they are delivered by the
+     * loop below if there is no scene, or on the next pulse otherwise.
+     */
+
+    if (this.flushing) {
+      return;
+    }
+
+    this.pulseRequested = false;
+    this.flushing = true;
+    try {
+      do {
+        this.flushOnce();
+      } while (this.bufferFilling.size != 0 && this.owner.getScene() == null);
+    } finally {
+      this.flushing = false;
+    }
+  }
+
+  private void flushOnce()
+  {
+    final var batch = this.bufferFilling;
+    if (batch.size == 0) {
+      return;
+    }
+
+    this.bufferFilling = this.bufferSpare;
+    this.bufferSpare = batch;
+
+    try {
+      final var subs = this.subscriptions;
+      for (int i = 0; i < subs.length; ++i) {
+        try {
+          subs[i].listener.onKeyEventBatch(batch);
+        } catch (final Throwable e) {
+          LOG.debug("Ignored exception in event handler: ", e);
+        }
+      }
+    } finally {
+      batch.size = 0;
+    }
+  }
+
+  private static final class Buffer
+    implements IvKeyEventBatchType
+  {
+    private static final IvKeyEventKind[] KINDS =
+      IvKeyEventKind.values();
+
+    private int[] events;
+    private int size;
+
+    Buffer()
+    {
+      this.events = new int[32];
+    }
+
+    void add(
+      final IvKeyEventKind kind,
+      final int index,
+      final boolean isSynthesized)
+    {
+      if (this.size == this.events.length) {
+        this.events = Arrays.copyOf(this.events, this.events.length * 2);
+      }
+
+      this.events[this.size] =
+        (index << 3) | (kind.ordinal() << 1) | (isSynthesized ? 1 : 0);
+      ++this.size;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.size;
+    }
+
+    @Override
+    public IvKeyEventKind kind(
+      final int position)
+    {
+      return KINDS[(this.packed(position) >>> 1) & 0b11];
+    }
+
+    @Override
+    public int index(
+      final int position)
+    {
+      return this.packed(position) >>> 3;
+    }
+
+    @Override
+    public boolean isSynthesized(
+      final int position)
+    {
+      return (this.packed(position) & 1) == 1;
+    }
+
+    private int packed(
+      final int position)
+    {
+      Objects.checkIndex(position, this.size);
+      return this.events[position];
+    }
+  }
+
+  private final class Subscription
+    implements IvKeySubscriptionType
+  {
+    private final IvKeyEventBatchListenerType listener;
+
+    Subscription(
+      final IvKeyEventBatchListenerType inListener)
+    {
+      this.listener = inListener;
+    }
+
+    @Override
+    public void close()
+    {
+      IvKeyEventBatcher.this.unsubscribe(this);
+    }
+  }
+}
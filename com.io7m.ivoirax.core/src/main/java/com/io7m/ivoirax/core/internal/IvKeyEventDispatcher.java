@@ -0,0 +1,577 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeySubscriptionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The filtering and delivery of key events to listeners. All pianos publish
+ * their events through a dispatcher so that consumers observe the same
+ * event semantics from every implementation.
+ *
+ * Each key has a small state machine, held in one byte of a byte array,
+ * that records whether the cursor is over the key, whether an enter event
+ * has been published for the key without a matching exit, and whether the
+ * key is pressed (and, if so, synthetically). Each incoming signal is
+ * checked against the key's state in constant time, and the dispatcher
+ * guarantees that, for every key and at any event rate:
+ *
+ * <ul>
+ *   <li>enter and exit events strictly alternate, beginning with an enter;</li>
+ *   <li>pressed and released events strictly alternate, beginning with a
+ *   press, and a release has the same synthesized flag as its press;</li>
+ *   <li>no enter or exit is published whilst the key is pressed. Hover
+ *   changes during a press are published after the release, so a key that
+ *   the cursor enters, presses, releases and leaves always produces
+ *   Enter, Pressed, Released, Exit in that order.</li>
+ * </ul>
+ *
+ * A dispatcher has a single replaceable primary listener, and any number of
+ * additional subscribed listeners. Subscribers are held in a copy-on-write
+ * array: subscribing and unsubscribing replace the array, and dispatching
+ * an event is a plain indexed loop over whichever array was current when
+ * the event was published. Dispatching an event therefore allocates
+ * nothing. Exceptions raised by listeners are logged and ignored, and do
+ * not prevent the event being delivered to the remaining listeners.
+ *
+ * Each subscription carries a mask of the event kinds it wants, and the
+ * dispatcher keeps the union of all masks. An event of a kind that no
+ * listener wants is discarded after updating the key state machine,
+ * without visiting any listeners, and so adapters that construct event
+ * values never construct values that nobody would receive.
+ */
+
+public final class IvKeyEventDispatcher
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyEventDispatcher.class);
+
+  /**
+   * The cursor is over the key.
+   */
+
+  public static final byte OVER = 0b0001;
+
+  /**
+   * An enter event has been published without a matching exit event.
+   */
+
+  public static final byte ENTERED = 0b0010;
+
+  /**
+   * The key is pressed.
+   */
+
+  public static final byte PRESSED = 0b0100;
+
+  /**
+   * The key was pressed synthetically.
+   */
+
+  public static final byte SYNTHESIZED = 0b1000;
+
+  /**
+   * The mask that includes every event kind.
+   */
+
+  public static final int MASK_ALL = 0b1111;
+
+  private static final int MASK_ENTER =
+    1 << IvKeyEventKind.KEY_ENTER.ordinal();
+  private static final int MASK_EXIT =
+    1 << IvKeyEventKind.KEY_EXIT.ordinal();
+  private static final int MASK_PRESSED =
+    1 << IvKeyEventKind.KEY_PRESSED.ordinal();
+  private static final int MASK_RELEASED =
+    1 << IvKeyEventKind.KEY_RELEASED.ordinal();
+
+  private static final IvKeyEventListenerType LISTENER_NONE =
+    new IvKeyEventListenerType()
+    {
+    };
+
+  private static final Subscription[] SUBSCRIPTIONS_NONE =
+    new Subscription[0];
+
+  private final byte[] states;
+  private final Object subscriptionsLock;
+  private volatile Subscription[] subscriptions;
+  private volatile int interest;
+  private IvKeyEventListenerType listener;
+  private int listenerMask;
+
+  /**
+   * The filtering and delivery of key events to listeners.
+   *
+   * @param keyCount The number of keys
+   */
+
+  public IvKeyEventDispatcher(
+    final int keyCount)
+  {
+    this.states =
+      new byte[keyCount];
+    this.listener =
+      LISTENER_NONE;
+    this.subscriptionsLock =
+      new Object();
+    this.subscriptions =
+      SUBSCRIPTIONS_NONE;
+  }
+
+  /**
+   * Subscribe a listener to events. This may be called from any thread.
+   *
+   * @param source     The object on whose behalf the listener is subscribed,
+   *                   used by {@link #unsubscribeAll(Object)}
+   * @param inListener The listener
+   *
+   * @return The subscription
+   */
+
+  public IvKeySubscriptionType subscribe(
+    final Object source,
+    final IvKeyEventListenerType inListener)
+  {
+    return this.subscribe(source, inListener, MASK_ALL);
+  }
+
+  /**
+   * Subscribe a listener to events of the given kinds. This may be called
+   * from any thread.
+   *
+   * @param source     The object on whose behalf the listener is subscribed,
+   *                   used by {@link #unsubscribeAll(Object)}
+   * @param inListener The listener
+   * @param mask       The mask of event kinds
+   *
+   * @return The subscription
+   *
+   * @see #maskOf(Set)
+   */
+
+  public IvKeySubscriptionType subscribe(
+    final Object source,
+    final IvKeyEventListenerType inListener,
+    final int mask)
+  {
+    final var subscription =
+      new Subscription(
+        Objects.requireNonNull(source, "source"),
+        Objects.requireNonNull(inListener, "listener"),
+        mask & MASK_ALL
+      );
+
+    synchronized (this.subscriptionsLock) {
+      final var existing = this.subscriptions;
+      final var updated = Arrays.copyOf(existing, existing.length + 1);
+      updated[existing.length] = subscription;
+      this.subscriptionsSet(updated);
+    }
+    return subscription;
+  }
+
+  /**
+   * @param kinds A set of event kinds
+   *
+   * @return The mask of the given event kinds
+   */
+
+  public static int maskOf(
+    final Set<IvKeyEventKind> kinds)
+  {
+    var mask = 0;
+    for (final var kind : kinds) {
+      mask |= 1 << kind.ordinal();
+    }
+    return mask;
+  }
+
+  /**
+   * @param kind An event kind
+   *
+   * @return {@code true} if any listener wants events of the given kind
+   */
+
+  public boolean isInterestedIn(
+    final IvKeyEventKind kind)
+  {
+    return (this.interest & (1 << kind.ordinal())) != 0;
+  }
+
+  /**
+   * Cancel every subscription made on behalf of the given object. This may
+   * be called from any thread.
+   *
+   * @param source The object on whose behalf listeners were subscribed
+   */
+
+  public void unsubscribeAll(
+    final Object source)
+  {
+    Objects.requireNonNull(source, "source");
+
+    synchronized (this.subscriptionsLock) {
+      this.subscriptionsSet(
+        Arrays.stream(this.subscriptions)
+          .filter(s -> s.source != source)
+          .toArray(Subscription[]::new)
+      );
+    }
+  }
+
+  private void unsubscribe(
+    final Subscription subscription)
+  {
+    synchronized (this.subscriptionsLock) {
+      this.subscriptionsSet(
+        Arrays.stream(this.subscriptions)
+          .filter(s -> s != subscription)
+          .toArray(Subscription[]::new)
+      );
+    }
+  }
+
+  private void subscriptionsSet(
+    final Subscription[] updated)
+  {
+    var mask = this.listenerMask;
+    for (final var subscription : updated) {
+      mask |= subscription.mask;
+    }
+    this.subscriptions = updated;
+    this.interest = mask;
+  }
+
+  /**
+   * Set the listener that will receive events of every kind.
+   *
+   * @param inListener The listener
+   */
+
+  public void setListener(
+    final IvKeyEventListenerType inListener)
+  {
+    this.setListener(inListener, MASK_ALL);
+  }
+
+  /**
+   * Set the listener that will receive events of the given kinds. The
+   * listener's mask replaces the mask of any previous listener, so kinds
+   * that only the previous listener wanted are no longer published.
+   *
+   * @param inListener The listener
+   * @param mask       The mask of event kinds
+   *
+   * @see #maskOf(Set)
+   */
+
+  public void setListener(
+    final IvKeyEventListenerType inListener,
+    final int mask)
+  {
+    this.listener =
+      Objects.requireNonNull(inListener, "listener");
+
+    synchronized (this.subscriptionsLock) {
+      this.listenerMask = mask & MASK_ALL;
+      this.subscriptionsSet(this.subscriptions);
+    }
+  }
+
+  /**
+   * The cursor moved over a key.
+   *
+   * @param index The key index
+   */
+
+  public void enter(
+    final int index)
+  {
+    final var state = this.states[index];
+    if ((state & OVER) != 0) {
+      return;
+    }
+    this.states[index] = (byte) (state | OVER);
+
+    /*
+     * If the exit from this key was deferred, the cursor has simply come
+     * back, and nothing needs to be published.
+     */
+
+    if ((state & (ENTERED | PRESSED)) != 0) {
+      return;
+    }
+
+    this.states[index] |= ENTERED;
+    this.deliverEnter(index);
+  }
+
+  /**
+   * The cursor moved off a key.
+   *
+   * @param index The key index
+   */
+
+  public void exit(
+    final int index)
+  {
+    final var state = this.states[index];
+    if ((state & OVER) == 0) {
+      return;
+    }
+    this.states[index] = (byte) (state & ~OVER);
+
+    /*
+     * If the key is pressed, the exit is deferred until the key is released.
+     */
+
+    if ((state & ENTERED) == 0 || (state & PRESSED) != 0) {
+      return;
+    }
+
+    this.states[index] &= (byte) ~ENTERED;
+    this.deliverExit(index);
+  }
+
+  /**
+   * A key was pressed.
+   *
+   * @param index         The key index
+   * @param isSynthesized {@code true} if the key press was synthesized
+   */
+
+  public void press(
+    final int index,
+    final boolean isSynthesized)
+  {
+    final var state = this.states[index];
+    if ((state & PRESSED) != 0) {
+      return;
+    }
+
+    this.states[index] =
+      (byte) (state | PRESSED | (isSynthesized ? SYNTHESIZED : 0));
+    this.deliverPress(index, isSynthesized);
+  }
+
+  /**
+   * A key was released. The released event carries the synthesized flag of
+   * the corresponding pressed event.
+   *
+   * @param index The key index
+   */
+
+  public void release(
+    final int index)
+  {
+    final var state = this.states[index];
+    if ((state & PRESSED) == 0) {
+      return;
+    }
+
+    final var isSynthesized = (state & SYNTHESIZED) != 0;
+    final var stateNext = (byte) (state & ~(PRESSED | SYNTHESIZED));
+    this.states[index] = stateNext;
+    this.deliverRelease(index, isSynthesized);
+    this.releaseHover(index, stateNext);
+  }
+
+  /**
+   * Publish any hover events that were withheld whilst a key was pressed:
+   * either the cursor left the key during the press, or the cursor arrived
+   * on the key during the press.
+   */
+
+  private void releaseHover(
+    final int index,
+    final byte state)
+  {
+    final var over = (state & OVER) != 0;
+    final var entered = (state & ENTERED) != 0;
+
+    if (entered && !over) {
+      this.states[index] &= (byte) ~ENTERED;
+      this.deliverExit(index);
+    } else if (over && !entered) {
+      this.states[index] |= ENTERED;
+      this.deliverEnter(index);
+    }
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return The state of the given key, for testing and diagnostics
+   */
+
+  public byte stateOf(
+    final int index)
+  {
+    return this.states[index];
+  }
+
+  private void deliverEnter(
+    final int index)
+  {
+    if ((this.interest & MASK_ENTER) == 0) {
+      return;
+    }
+
+    if ((this.listenerMask & MASK_ENTER) != 0) {
+      try {
+        this.listener.onEnter(index);
+      } catch (final Throwable e) {
+        LOG.debug("Ignored exception in event handler: ", e);
+      }
+    }
+
+    final var subs = this.subscriptions;
+    for (int i = 0; i < subs.length; ++i) {
+      final var subscription = subs[i];
+      if ((subscription.mask & MASK_ENTER) != 0) {
+        try {
+          subscription.listener.onEnter(index);
+        } catch (final Throwable e) {
+          LOG.debug("Ignored exception in event handler: ", e);
+        }
+      }
+    }
+  }
+
+  private void deliverExit(
+    final int index)
+  {
+    if ((this.interest & MASK_EXIT) == 0) {
+      return;
+    }
+
+    if ((this.listenerMask & MASK_EXIT) != 0) {
+      try {
+        this.listener.onExit(index);
+      } catch (final Throwable e) {
+        LOG.debug("Ignored exception in event handler: ", e);
+      }
+    }
+
+    final var subs = this.subscriptions;
+    for (int i = 0; i < subs.length; ++i) {
+      final var subscription = subs[i];
+      if ((subscription.mask & MASK_EXIT) != 0) {
+        try {
+          subscription.listener.onExit(index);
+        } catch (final Throwable e) {
+          LOG.debug("Ignored exception in event handler: ", e);
+        }
+      }
+    }
+  }
+
+  private void deliverPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+    if ((this.interest & MASK_PRESSED) == 0) {
+      return;
+    }
+
+    if ((this.listenerMask & MASK_PRESSED) != 0) {
+      try {
+        this.listener.onPress(index, isSynthesized);
+      } catch (final Throwable e) {
+        LOG.debug("Ignored exception in event handler: ", e);
+      }
+    }
+
+    final var subs = this.subscriptions;
+    for (int i = 0; i < subs.length; ++i) {
+      final var subscription = subs[i];
+      if ((subscription.mask & MASK_PRESSED) != 0) {
+        try {
+          subscription.listener.onPress(index, isSynthesized);
+        } catch (final Throwable e) {
+          LOG.debug("Ignored exception in event handler: ", e);
+        }
+      }
+    }
+  }
+
+  private void deliverRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+    if ((this.interest & MASK_RELEASED) == 0) {
+      return;
+    }
+
+    if ((this.listenerMask & MASK_RELEASED) != 0) {
+      try {
+        this.listener.onRelease(index, isSynthesized);
+      } catch (final Throwable e) {
+        LOG.debug("Ignored exception in event handler: ", e);
+      }
+    }
+
+    final var subs = this.subscriptions;
+    for (int i = 0; i < subs.length; ++i) {
+      final var subscription = subs[i];
+      if ((subscription.mask & MASK_RELEASED) != 0) {
+        try {
+          subscription.listener.onRelease(index, isSynthesized);
+        } catch (final Throwable e) {
+          LOG.debug("Ignored exception in event handler: ", e);
+        }
+      }
+    }
+  }
+
+  private final class Subscription
+    implements IvKeySubscriptionType
+  {
+    private final Object source;
+    private final IvKeyEventListenerType listener;
+    private final int mask;
+
+    Subscription(
+      final Object inSource,
+      final IvKeyEventListenerType inListener,
+      final int inMask)
+    {
+      this.source =
+        inSource;
+      this.listener =
+        inListener;
+      this.mask =
+        inMask;
+    }
+
+    @Override
+    public void close()
+    {
+      IvKeyEventDispatcher.this.unsubscribe(this);
+    }
+  }
+}
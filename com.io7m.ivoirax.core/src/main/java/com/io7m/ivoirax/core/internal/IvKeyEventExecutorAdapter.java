@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEnter;
+import com.io7m.ivoirax.core.IvKeyEventHandlerType;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyExit;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A primitive listener that constructs event values and passes them to an
+ * {@link IvKeyEventHandlerType} on an {@link Executor}.
+ *
+ * Each key has its own lane: a queue of pending events and a flag that
+ * indicates whether a task is currently draining the queue. At most one task
+ * per lane is submitted to the executor at any given time, and so the
+ * events for a single key are delivered in the order that they were
+ * published, whilst events for different keys may be delivered in parallel.
+ * The publishing thread only enqueues events and never waits for the
+ * handler.
+ */
+
+public final class IvKeyEventExecutorAdapter
+  implements IvKeyEventListenerType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyEventExecutorAdapter.class);
+
+  private final IvKeyEventHandlerType handler;
+  private final Executor executor;
+  private final Lane[] lanes;
+
+  /**
+   * A primitive listener that passes events to a handler on an executor.
+   *
+   * @param inHandler  The handler
+   * @param inExecutor The executor
+   * @param keyCount   The number of keys
+   */
+
+  public IvKeyEventExecutorAdapter(
+    final IvKeyEventHandlerType inHandler,
+    final Executor inExecutor,
+    final int keyCount)
+  {
+    this.handler =
+      Objects.requireNonNull(inHandler, "handler");
+    this.executor =
+      Objects.requireNonNull(inExecutor, "executor");
+    this.lanes =
+      new Lane[keyCount];
+  }
+
+  @Override
+  public void onEnter(
+    final int index)
+  {
+    this.enqueue(index, new IvKeyEnter(index));
+  }
+
+  @Override
+  public void onExit(
+    final int index)
+  {
+    this.enqueue(index, new IvKeyExit(index));
+  }
+
+  @Override
+  public void onPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.enqueue(index, new IvKeyPressed(index, isSynthesized));
+  }
+
+  @Override
+  public void onRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.enqueue(index, new IvKeyReleased(index, isSynthesized));
+  }
+
+  private void enqueue(
+    final int index,
+    final IvKeyEventType event)
+  {
+    /*
+     * Lanes are only ever created by the publishing thread, and are
+     * published to the executor through Executor.execute(), so no further
+     * synchronization is required here.
+     */
+
+    var lane = this.lanes[index];
+    if (lane == null) {
+      lane = new Lane(this.handler);
+      this.lanes[index] = lane;
+    }
+
+    lane.queue.offer(event);
+    if (lane.scheduled.compareAndSet(false, true)) {
+      try {
+        this.executor.execute(lane);
+      } catch (final RejectedExecutionException e) {
+        lane.queue.clear();
+        lane.scheduled.set(false);
+        LOG.debug("Executor rejected event delivery: ", e);
+      }
+    }
+  }
+
+  private static final class Lane
+    implements Runnable
+  {
+    private final IvKeyEventHandlerType handler;
+    private final ConcurrentLinkedQueue<IvKeyEventType> queue;
+    private final AtomicBoolean scheduled;
+
+    Lane(
+      final IvKeyEventHandlerType inHandler)
+    {
+      this.handler =
+        inHandler;
+      this.queue =
+        new ConcurrentLinkedQueue<>();
+      this.scheduled =
+        new AtomicBoolean(false);
+    }
+
+    @Override
+    public void run()
+    {
+      while (true) {
+        while (true) {
+          final var event = this.queue.poll();
+          if (event == null) {
+            break;
+          }
+          try {
+            this.handler.onKeyEvent(event);
+          } catch (final Throwable e) {
+            LOG.debug("Ignored exception in event handler: ", e);
+          }
+        }
+
+        /*
+         * An event might have been enqueued after the queue was observed
+         * to be empty, but before the flag was cleared. In that case, the
+         * publisher will have seen the flag set and will not have scheduled
+         * a new task, so this task must carry on draining.
+         */
+
+        this.scheduled.set(false);
+        if (this.queue.isEmpty()) {
+          return;
+        }
+        if (!this.scheduled.compareAndSet(false, true)) {
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEnter;
+import com.io7m.ivoirax.core.IvKeyEventHandlerType;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeyExit;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+
+import java.util.Objects;
+
+/**
+ * A primitive listener that constructs event values and passes them to an
+ * {@link IvKeyEventHandlerType}.
+ */
+
+public final class IvKeyEventHandlerAdapter
+  implements IvKeyEventListenerType
+{
+  private final IvKeyEventHandlerType handler;
+
+  /**
+   * A primitive listener that constructs event values and passes them to an
+   * {@link IvKeyEventHandlerType}.
+   *
+   * @param inHandler The handler
+   */
+
+  public IvKeyEventHandlerAdapter(
+    final IvKeyEventHandlerType inHandler)
+  {
+    this.handler =
+      Objects.requireNonNull(inHandler, "handler");
+  }
+
+  @Override
+  public void onEnter(
+    final int index)
+  {
+    this.handler.onKeyEvent(new IvKeyEnter(index));
+  }
+
+  @Override
+  public void onExit(
+    final int index)
+  {
+    this.handler.onKeyEvent(new IvKeyExit(index));
+  }
+
+  @Override
+  public void onPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.handler.onKeyEvent(new IvKeyPressed(index, isSynthesized));
+  }
+
+  @Override
+  public void onRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.handler.onKeyEvent(new IvKeyReleased(index, isSynthesized));
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEnter;
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeyEventOverflowPolicy;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyExit;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.ivoirax.core.IvKeySubscriptionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Flow.Publisher} of key events.
+ *
+ * Each subscriber has a bounded buffer of pending events. Events are
+ * appended to the buffer by the FX application thread, and are delivered
+ * to the subscriber only as far as the subscriber's outstanding demand
+ * permits. Delivery is serialized with a work-in-progress counter: the
+ * thread that publishes an event or requests more events delivers as many
+ * events as demand allows, unless another thread is already doing so, in
+ * which case that thread picks up the additional work before it finishes.
+ * When a buffer overflows, the publisher's {@link IvKeyEventOverflowPolicy}
+ * decides what is discarded.
+ *
+ * The publisher only subscribes to the piano's dispatcher whilst it has at
+ * least one subscriber.
+ */
+
+public final class IvKeyEventPublisher
+  implements Flow.Publisher<IvKeyEventType>, IvKeyEventListenerType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyEventPublisher.class);
+
+  private static final KeySubscription[] SUBSCRIPTIONS_NONE =
+    new KeySubscription[0];
+
+  private final IvKeyEventDispatcher dispatcher;
+  private final IvKeyEventOverflowPolicy policy;
+  private final int capacity;
+  private final Object subscriptionsLock;
+  private volatile KeySubscription[] subscriptions;
+  private IvKeySubscriptionType dispatcherSubscription;
+
+  /**
+   * A publisher of key events.
+   *
+   * @param inDispatcher The dispatcher that produces events
+   * @param inPolicy     The overflow policy
+   * @param inCapacity   The maximum number of pending events per subscriber
+   */
+
+  public IvKeyEventPublisher(
+    final IvKeyEventDispatcher inDispatcher,
+    final IvKeyEventOverflowPolicy inPolicy,
+    final int inCapacity)
+  {
+    this.dispatcher =
+      Objects.requireNonNull(inDispatcher, "dispatcher");
+    this.policy =
+      Objects.requireNonNull(inPolicy, "policy");
+
+    if (inCapacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+
+    this.capacity =
+      inCapacity;
+    this.subscriptionsLock =
+      new Object();
+    this.subscriptions =
+      SUBSCRIPTIONS_NONE;
+  }
+
+  @Override
+  public void subscribe(
+    final Flow.Subscriber<? super IvKeyEventType> subscriber)
+  {
+    final var subscription =
+      new KeySubscription(Objects.requireNonNull(subscriber, "subscriber"));
+
+    synchronized (this.subscriptionsLock) {
+      final var existing = this.subscriptions;
+      final var updated = Arrays.copyOf(existing, existing.length + 1);
+      updated[existing.length] = subscription;
+      this.subscriptions = updated;
+
+      if (this.dispatcherSubscription == null) {
+        this.dispatcherSubscription = this.dispatcher.subscribe(this, this);
+      }
+    }
+
+    subscriber.onSubscribe(subscription);
+  }
+
+  private void unsubscribe(
+    final KeySubscription subscription)
+  {
+    synchronized (this.subscriptionsLock) {
+      this.subscriptions =
+        Arrays.stream(this.subscriptions)
+          .filter(s -> s != subscription)
+          .toArray(KeySubscription[]::new);
+
+      if (this.subscriptions.length == 0
+          && this.dispatcherSubscription != null) {
+        this.dispatcherSubscription.close();
+        this.dispatcherSubscription = null;
+      }
+    }
+  }
+
+  @Override
+  public void onEnter(
+    final int index)
+  {
+    this.publish(new IvKeyEnter(index));
+  }
+
+  @Override
+  public void onExit(
+    final int index)
+  {
+    this.publish(new IvKeyExit(index));
+  }
+
+  @Override
+  public void onPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.publish(new IvKeyPressed(index, isSynthesized));
+  }
+
+  @Override
+  public void onRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.publish(new IvKeyReleased(index, isSynthesized));
+  }
+
+  private void publish(
+    final IvKeyEventType event)
+  {
+    final var subs = this.subscriptions;
+    for (int i = 0; i < subs.length; ++i) {
+      subs[i].offer(event);
+    }
+  }
+
+  private static boolean isHover(
+    final IvKeyEventType event)
+  {
+    final var kind = event.kind();
+    return kind == IvKeyEventKind.KEY_ENTER || kind == IvKeyEventKind.KEY_EXIT;
+  }
+
+  private final class KeySubscription
+    implements Flow.Subscription
+  {
+    private final Flow.Subscriber<? super IvKeyEventType> subscriber;
+    private final ArrayDeque<IvKeyEventType> buffer;
+    private final AtomicInteger workInProgress;
+    private long demand;
+    private Throwable failure;
+    private volatile boolean cancelled;
+
+    KeySubscription(
+      final Flow.Subscriber<? super IvKeyEventType> inSubscriber)
+    {
+      this.subscriber =
+        inSubscriber;
+      this.buffer =
+        new ArrayDeque<>();
+      this.workInProgress =
+        new AtomicInteger(0);
+    }
+
+    void offer(
+      final IvKeyEventType event)
+    {
+      synchronized (this) {
+        if (this.cancelled || this.failure != null) {
+          return;
+        }
+        final var full =
+          this.buffer.size() >= IvKeyEventPublisher.this.capacity;
+        if (!full || this.overflow(event)) {
+          this.buffer.addLast(event);
+        }
+      }
+      this.drain();
+    }
+
+    /**
+     * Apply the overflow policy to make room for the given event.
+     *
+     * @return {@code true} if the event should be appended to the buffer
+     */
+
+    private boolean overflow(
+      final IvKeyEventType event)
+    {
+      return switch (IvKeyEventPublisher.this.policy) {
+        case DROP_HOVER -> {
+          if (isHover(event)) {
+            yield false;
+          }
+
+          /*
+           * Only hover events are ever evicted. If none are pending, the
+           * incoming event is discarded; evicting the oldest press or
+           * release would remove an event the subscriber may already have
+           * seen the counterpart of.
+           */
+
+          yield this.removeOldestHover();
+        }
+        case BUFFER_PRESSES -> {
+          if (isHover(event)) {
+            yield false;
+          }
+          if (this.removeOldestHover()) {
+            yield true;
+          }
+          this.fail();
+          yield false;
+        }
+        case FAIL -> {
+          this.fail();
+          yield false;
+        }
+      };
+    }
+
+    private void fail()
+    {
+      this.failure = new IllegalStateException(
+        "Subscriber buffer overflowed (capacity %d, policy %s)"
+          .formatted(
+            Integer.valueOf(IvKeyEventPublisher.this.capacity),
+            IvKeyEventPublisher.this.policy)
+      );
+    }
+
+    private boolean removeOldestHover()
+    {
+      final var iterator = this.buffer.iterator();
+      while (iterator.hasNext()) {
+        if (isHover(iterator.next())) {
+          iterator.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void request(
+      final long n)
+    {
+      synchronized (this) {
+        if (n <= 0L) {
+          this.failure = new IllegalArgumentException(
+            "Requested a non-positive number of events: %d"
+              .formatted(Long.valueOf(n))
+          );
+        } else {
+          final var sum = this.demand + n;
+          this.demand = sum < 0L ? Long.MAX_VALUE : sum;
+        }
+      }
+      this.drain();
+    }
+
+    @Override
+    public void cancel()
+    {
+      this.cancelled = true;
+      IvKeyEventPublisher.this.unsubscribe(this);
+      synchronized (this) {
+        this.buffer.clear();
+      }
+    }
+
+    private void drain()
+    {
+      if (this.workInProgress.getAndIncrement() != 0) {
+        return;
+      }
+
+      int missed = 1;
+      while (true) {
+        if (!this.drainOnce()) {
+          return;
+        }
+        missed = this.workInProgress.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Deliver as many events as demand permits.
+     *
+     * @return {@code false} if the subscription has terminated
+     */
+
+    private boolean drainOnce()
+    {
+      while (!this.cancelled) {
+        final IvKeyEventType event;
+        final Throwable error;
+        synchronized (this) {
+          error = this.failure;
+          if (error == null && this.demand > 0L) {
+            event = this.buffer.pollFirst();
+            if (event != null) {
+              --this.demand;
+            }
+          } else {
+            event = null;
+          }
+        }
+
+        if (error != null) {
+          this.cancel();
+          this.subscriber.onError(error);
+          return false;
+        }
+        if (event == null) {
+          return true;
+        }
+
+        try {
+          this.subscriber.onNext(event);
+        } catch (final Throwable e) {
+          LOG.debug("Cancelling subscriber that raised exception: ", e);
+          this.cancel();
+          return false;
+        }
+      }
+      return false;
+    }
+  }
+}
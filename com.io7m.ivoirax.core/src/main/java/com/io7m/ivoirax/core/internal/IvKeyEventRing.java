@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEventCursorType;
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeyEventPacking;
+import com.io7m.ivoirax.core.IvKeyEventRingType;
+
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * A single-producer ring buffer of packed key events.
+ *
+ * The producer (the FX application thread) maintains two sequence
+ * counters. Before writing an event into slot {@code s & mask}, it advances
+ * {@code claimed} to {@code s + 1}; after writing, it advances
+ * {@code published} to {@code s + 1}. A cursor reads slots up to
+ * {@code published}, and after reading each slot checks {@code claimed} to
+ * determine whether the producer may have overwritten the slot during the
+ * read. If so, the value is discarded and the cursor skips forward to the
+ * oldest event that is still intact.
+ */
+
+public final class IvKeyEventRing
+  implements IvKeyEventRingType, IvKeyEventListenerType
+{
+  private final AtomicLongArray entries;
+  private final AtomicLong claimed;
+  private final AtomicLong published;
+  private final int capacity;
+  private final int mask;
+
+  /**
+   * A ring buffer of packed key events.
+   *
+   * @param keyCount   The number of keys
+   * @param inCapacity The capacity of the ring (a power of two)
+   */
+
+  public IvKeyEventRing(
+    final int keyCount,
+    final int inCapacity)
+  {
+    if (keyCount > IvKeyEventPacking.KEY_COUNT_MAXIMUM) {
+      throw new UnsupportedOperationException(
+        "Key event rings support at most %d keys."
+          .formatted(Integer.valueOf(IvKeyEventPacking.KEY_COUNT_MAXIMUM))
+      );
+    }
+    if (Integer.bitCount(inCapacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two.");
+    }
+
+    this.capacity =
+      inCapacity;
+    this.mask =
+      inCapacity - 1;
+    this.entries =
+      new AtomicLongArray(inCapacity);
+    this.claimed =
+      new AtomicLong();
+    this.published =
+      new AtomicLong();
+  }
+
+  @Override
+  public int capacity()
+  {
+    return this.capacity;
+  }
+
+  @Override
+  public IvKeyEventCursorType newCursor()
+  {
+    return new Cursor(this.published.get());
+  }
+
+  @Override
+  public void onEnter(
+    final int index)
+  {
+    this.publish(IvKeyEventKind.KEY_ENTER, index, false);
+  }
+
+  @Override
+  public void onExit(
+    final int index)
+  {
+    this.publish(IvKeyEventKind.KEY_EXIT, index, false);
+  }
+
+  @Override
+  public void onPress(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.publish(IvKeyEventKind.KEY_PRESSED, index, isSynthesized);
+  }
+
+  @Override
+  public void onRelease(
+    final int index,
+    final boolean isSynthesized)
+  {
+    this.publish(IvKeyEventKind.KEY_RELEASED, index, isSynthesized);
+  }
+
+  private void publish(
+    final IvKeyEventKind kind,
+    final int index,
+    final boolean isSynthesized)
+  {
+    final var packed =
+      IvKeyEventPacking.pack(kind, index, isSynthesized, System.nanoTime());
+
+    final var sequence = this.published.getPlain();
+    this.claimed.setPlain(sequence + 1L);
+    VarHandle.storeStoreFence();
+    this.entries.setOpaque((int) (sequence & this.mask), packed);
+    this.published.setRelease(sequence + 1L);
+  }
+
+  private final class Cursor
+    implements IvKeyEventCursorType
+  {
+    private long next;
+    private long lost;
+
+    Cursor(
+      final long inNext)
+    {
+      this.next = inNext;
+    }
+
+    @Override
+    public int poll(
+      final LongConsumer receiver)
+    {
+      Objects.requireNonNull(receiver, "receiver");
+
+      final var ring = IvKeyEventRing.this;
+      final var end = ring.published.getAcquire();
+      var count = 0;
+
+      while (this.next < end) {
+        final var packed =
+          ring.entries.getOpaque((int) (this.next & ring.mask));
+        VarHandle.loadLoadFence();
+
+        final var oldestIntact = ring.claimed.getAcquire() - ring.capacity;
+        if (this.next < oldestIntact) {
+          this.lost += oldestIntact - this.next;
+          this.next = oldestIntact;
+          continue;
+        }
+
+        receiver.accept(packed);
+        ++this.next;
+        ++count;
+      }
+      return count;
+    }
+
+    @Override
+    public long lost()
+    {
+      return this.lost;
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+/**
+ * Functions over the arithmetic layout of piano keyboards.
+ *
+ * Key {@code 0} is always a C. Natural keys are laid out edge to edge in
+ * order of their <i>natural ordinal</i>, and each accidental key straddles
+ * the boundary between the natural key below it and the natural key above it.
+ */
+
+public final class IvKeyGeometry
+{
+  private static final int[] NATURAL_OFFSETS = {
+    0, 2, 4, 5, 7, 9, 11,
+  };
+
+  private static final int[] NATURAL_ORDINALS = {
+    0, 0, 1, 1, 2, 3, 3, 4, 4, 5, 5, 6,
+  };
+
+  private IvKeyGeometry()
+  {
+
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return {@code true} if the given key is an accidental (black) key
+   */
+
+  public static boolean isAccidental(
+    final int index)
+  {
+    return switch (index % 12) {
+      case 0 -> false;
+      case 1 -> true;
+      case 2 -> false;
+      case 3 -> true;
+      case 4 -> false;
+      case 5 -> false;
+      case 6 -> true;
+      case 7 -> false;
+      case 8 -> true;
+      case 9 -> false;
+      case 10 -> true;
+      case 11 -> false;
+      default -> false;
+    };
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return The ordinal of the given natural key, or of the natural key
+   * immediately below the given accidental key
+   */
+
+  public static int naturalOrdinal(
+    final int index)
+  {
+    return ((index / 12) * 7) + NATURAL_ORDINALS[index % 12];
+  }
+
+  /**
+   * @param ordinal The natural ordinal
+   *
+   * @return The key index of the natural key with the given ordinal
+   */
+
+  public static int naturalIndex(
+    final int ordinal)
+  {
+    return ((ordinal / 7) * 12) + NATURAL_OFFSETS[ordinal % 7];
+  }
+
+  /**
+   * @param keyCount The number of keys
+   *
+   * @return The number of natural keys in a keyboard of the given size
+   */
+
+  public static int naturalCount(
+    final int keyCount)
+  {
+    return naturalOrdinal(keyCount - 1) + 1;
+  }
+
+  /**
+   * Find the X position of a key on a horizontal keyboard.
+   *
+   * @param index        The key index
+   * @param naturalWidth The width of natural keys
+   *
+   * @return The X position of the left edge of the key
+   */
+
+  public static double horizontalXOf(
+    final int index,
+    final double naturalWidth)
+  {
+    final var naturalX = naturalOrdinal(index) * naturalWidth;
+    if (isAccidental(index)) {
+      return naturalX + naturalWidth - (naturalWidth / 4.0);
+    }
+    return naturalX;
+  }
+
+  /**
+   * Find the key at the given position on a horizontal keyboard. Natural
+   * keys are {@code naturalWidth} wide and span the full height of the
+   * keyboard; accidental keys are half as wide and two thirds as tall, and
+   * are aligned to the top edge.
+   *
+   * @param keyCount     The number of keys
+   * @param x            The X position
+   * @param y            The Y position
+   * @param naturalWidth The width of natural keys
+   * @param height       The height of the keyboard
+   *
+   * @return The key index, or {@code -1} if there is no key at the position
+   */
+
+  public static int horizontalKeyAt(
+    final int keyCount,
+    final double x,
+    final double y,
+    final double naturalWidth,
+    final double height)
+  {
+    if (x < 0.0 || y < 0.0 || y >= height || naturalWidth <= 0.0) {
+      return -1;
+    }
+
+    final var ordinal = (int) (x / naturalWidth);
+    if (ordinal >= naturalCount(keyCount)) {
+      return -1;
+    }
+
+    final var natural = naturalIndex(ordinal);
+    if (y < (height / 3.0) * 2.0) {
+      final var naturalX = ordinal * naturalWidth;
+      final var overlap = naturalWidth / 4.0;
+      final var above = natural + 1;
+      if (x >= naturalX + naturalWidth - overlap
+          && above < keyCount
+          && isAccidental(above)) {
+        return above;
+      }
+      final var below = natural - 1;
+      if (x < naturalX + overlap && below >= 0 && isAccidental(below)) {
+        return below;
+      }
+    }
+    return natural;
+  }
+
+  /**
+   * Find the Y position of a key on a vertical keyboard. Natural keys are
+   * laid out bottom to top in order of increasing index.
+   *
+   * @param keyCount      The number of keys
+   * @param index         The key index
+   * @param naturalHeight The height of natural keys
+   *
+   * @return The Y position of the top edge of the key
+   */
+
+  public static double verticalYOf(
+    final int keyCount,
+    final int index,
+    final double naturalHeight)
+  {
+    final var ordinalTop =
+      naturalCount(keyCount) - 1 - naturalOrdinal(index);
+    final var naturalY =
+      ordinalTop * naturalHeight;
+
+    if (isAccidental(index)) {
+      return naturalY - (naturalHeight / 3.0);
+    }
+    return naturalY;
+  }
+
+  /**
+   * Calculate the X positions of all keys on a horizontal keyboard, in units
+   * of the natural key width. Multiplying an element by the current natural
+   * key width yields the same position as {@link #horizontalXOf(int, double)}.
+   *
+   * @param keyCount The number of keys
+   *
+   * @return The key positions
+   */
+
+  public static double[] horizontalOffsets(
+    final int keyCount)
+  {
+    final var offsets = new double[keyCount];
+    for (int index = 0; index < keyCount; ++index) {
+      offsets[index] = horizontalXOf(index, 1.0);
+    }
+    return offsets;
+  }
+
+  /**
+   * Calculate the Y positions of all keys on a vertical keyboard, in units
+   * of the natural key height. Multiplying an element by the current natural
+   * key height yields the same position as
+   * {@link #verticalYOf(int, int, double)}.
+   *
+   * @param keyCount The number of keys
+   *
+   * @return The key positions
+   */
+
+  public static double[] verticalOffsets(
+    final int keyCount)
+  {
+    final var offsets = new double[keyCount];
+    for (int index = 0; index < keyCount; ++index) {
+      offsets[index] = verticalYOf(keyCount, index, 1.0);
+    }
+    return offsets;
+  }
+
+  /**
+   * Find the key at the given position on a vertical keyboard. Natural keys
+   * are {@code naturalHeight} tall and span the full width of the keyboard;
+   * accidental keys are two thirds as tall and half as wide, and are aligned
+   * to the left edge.
+   *
+   * @param keyCount      The number of keys
+   * @param x             The X position
+   * @param y             The Y position
+   * @param width         The width of the keyboard
+   * @param naturalHeight The height of natural keys
+   *
+   * @return The key index, or {@code -1} if there is no key at the position
+   */
+
+  public static int verticalKeyAt(
+    final int keyCount,
+    final double x,
+    final double y,
+    final double width,
+    final double naturalHeight)
+  {
+    if (x < 0.0 || y < 0.0 || x >= width || naturalHeight <= 0.0) {
+      return -1;
+    }
+
+    final var naturalCount = naturalCount(keyCount);
+    final var ordinalTop = (int) (y / naturalHeight);
+    if (ordinalTop >= naturalCount) {
+      return -1;
+    }
+
+    final var ordinal = naturalCount - 1 - ordinalTop;
+    final var natural = naturalIndex(ordinal);
+    if (x < width / 2.0) {
+      final var naturalY = ordinalTop * naturalHeight;
+      final var overlap = naturalHeight / 3.0;
+      final var above = natural + 1;
+      if (y < naturalY + overlap && above < keyCount && isAccidental(above)) {
+        return above;
+      }
+      final var below = natural - 1;
+      if (y >= naturalY + naturalHeight - overlap
+          && below >= 0
+          && isAccidental(below)) {
+        return below;
+      }
+    }
+    return natural;
+  }
+}
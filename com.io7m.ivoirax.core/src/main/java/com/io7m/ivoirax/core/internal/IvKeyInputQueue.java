@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A queue of key presses and releases that may be submitted from any
+ * thread, and that are applied to a set of pressed keys on the FX thread
+ * once per pulse.
+ *
+ * Producers append to a bounded, lock-free, multi-producer ring buffer.
+ * The ring is drained by an {@link AnimationTimer} that is started when the
+ * first event arrives and stopped again once there is nothing left to do,
+ * so an idle piano costs nothing and a busy piano costs one FX thread hop
+ * per frame regardless of the input rate.
+ *
+ * If a key is pressed and then released within the same pulse, the release
+ * is held back until the start of the next pulse so that the press is
+ * visible for at least one frame. At most one release is held back per
+ * key: if the key is pressed again before the held release is applied, the
+ * two cancel out and the key simply remains pressed, so any number of
+ * press/release pairs for a key within one pulse collapse into a single
+ * visible press. The queue therefore never falls behind the input,
+ * however fast a key is repeated, and the state it keeps per key is fixed
+ * in size.
+ *
+ * Producers never wait. If the ring is full, the event is instead recorded
+ * in a fixed per-key overflow slot that holds the most recent request for
+ * that key, and every subsequent event goes to the overflow slots as well
+ * until the FX thread has merged them, so the events from any one producer
+ * are still applied in the order that they were submitted. A key that is
+ * pressed and released again whilst in overflow may therefore never be
+ * seen pressed, but its final state is always correct. In particular,
+ * submitting events on the FX thread itself can never stall the
+ * application.
+ */
+
+public final class IvKeyInputQueue
+{
+  private static final int EMPTY = -1;
+  private static final int OVERFLOW_NONE = 0;
+  private static final int OVERFLOW_RELEASE = 1;
+  private static final int OVERFLOW_PRESS = 2;
+  private static final int CAPACITY_DEFAULT = 1024;
+
+  private final IvKeyPressedSet keys;
+  private final AtomicLong tail;
+  private final AtomicLongArray sequences;
+  private final int[] values;
+  private final int mask;
+  private final AtomicBoolean scheduled;
+  private final AtomicIntegerArray overflow;
+  private final AtomicBoolean overflowing;
+  private final AnimationTimer timer;
+  private final long[] pressedThisPulse;
+  private final long[] releasesPending;
+  private long head;
+  private int releasesPendingCount;
+
+  /**
+   * A queue of key presses and releases, with the default capacity.
+   *
+   * @param inKeys The set of pressed keys that will receive events
+   */
+
+  public IvKeyInputQueue(
+    final IvKeyPressedSet inKeys)
+  {
+    this(inKeys, CAPACITY_DEFAULT);
+  }
+
+  /**
+   * A queue of key presses and releases.
+   *
+   * @param inKeys     The set of pressed keys that will receive events
+   * @param inCapacity The capacity of the ring buffer (a power of two)
+   */
+
+  public IvKeyInputQueue(
+    final IvKeyPressedSet inKeys,
+    final int inCapacity)
+  {
+    if (Integer.bitCount(inCapacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two.");
+    }
+
+    this.keys =
+      Objects.requireNonNull(inKeys, "keys");
+    this.tail =
+      new AtomicLong();
+    this.sequences =
+      new AtomicLongArray(inCapacity);
+    for (int index = 0; index < inCapacity; ++index) {
+      this.sequences.set(index, index);
+    }
+    this.values =
+      new int[inCapacity];
+    this.mask =
+      inCapacity - 1;
+    this.scheduled =
+      new AtomicBoolean(false);
+    this.overflow =
+      new AtomicIntegerArray(inKeys.keyCount());
+    this.overflowing =
+      new AtomicBoolean(false);
+    this.pressedThisPulse =
+      new long[(inKeys.keyCount() + 63) >>> 6];
+    this.releasesPending =
+      new long[(inKeys.keyCount() + 63) >>> 6];
+    this.timer = new AnimationTimer()
+    {
+      @Override
+      public void handle(
+        final long now)
+      {
+        IvKeyInputQueue.this.onPulse();
+      }
+    };
+  }
+
+  /**
+   * Submit a keypress. This method may be called from any thread. Indices
+   * outside of the keyboard are ignored.
+   *
+   * @param index The key index
+   */
+
+  public void press(
+    final int index)
+  {
+    if (index >= 0 && index < this.keys.keyCount()) {
+      this.offer(index, (index << 1) | 1, OVERFLOW_PRESS);
+    }
+  }
+
+  /**
+   * Submit a key release. This method may be called from any thread. Indices
+   * outside of the keyboard are ignored.
+   *
+   * @param index The key index
+   */
+
+  public void release(
+    final int index)
+  {
+    if (index >= 0 && index < this.keys.keyCount()) {
+      this.offer(index, index << 1, OVERFLOW_RELEASE);
+    }
+  }
+
+  /**
+   * Append an event to the ring or, if the ring is full or events are
+   * already overflowing, to the per-key overflow slots.
+   */
+
+  private void offer(
+    final int index,
+    final int value,
+    final int overflowState)
+  {
+    if (this.overflowing.get() || !this.append(value)) {
+      this.overflow.set(index, overflowState);
+      this.overflowing.set(true);
+    }
+
+    if (this.scheduled.compareAndSet(false, true)) {
+      Platform.runLater(this.timer::start);
+    }
+  }
+
+  /**
+   * Append an event to the ring.
+   *
+   * @return {@code false} if the ring is full
+   */
+
+  private boolean append(
+    final int value)
+  {
+    while (true) {
+      final var position = this.tail.get();
+      final var slot = (int) (position & this.mask);
+      final var difference = this.sequences.getAcquire(slot) - position;
+
+      if (difference == 0L) {
+        if (this.tail.compareAndSet(position, position + 1L)) {
+          this.values[slot] = value;
+          this.sequences.set(slot, position + 1L);
+          return true;
+        }
+      } else if (difference < 0L) {
+        return false;
+      }
+    }
+  }
+
+  private int poll()
+  {
+    final var position = this.head;
+    final var slot = (int) (position & this.mask);
+    if (this.sequences.getAcquire(slot) != position + 1L) {
+      return EMPTY;
+    }
+
+    final var value = this.values[slot];
+    this.sequences.setRelease(slot, position + this.mask + 1L);
+    this.head = position + 1L;
+    return value;
+  }
+
+  private void onPulse()
+  {
+    Arrays.fill(this.pressedThisPulse, 0L);
+
+    /*
+     * Releases held back on the previous pulse are applied first, followed
+     * by everything that has arrived since.
+     */
+
+    if (this.releasesPendingCount > 0) {
+      this.applyReleasesPending();
+    }
+
+    for (var value = this.poll(); value != EMPTY; value = this.poll()) {
+      this.apply(value);
+    }
+
+    /*
+     * Overflowed events were submitted after everything in the ring. The
+     * flag is cleared before the slots are read, so that any event that
+     * misses this merge either lands in a slot that is read now, or goes to
+     * the ring and is applied on the next pulse.
+     */
+
+    if (this.overflowing.get()) {
+      this.overflowing.set(false);
+      this.applyOverflow();
+    }
+
+    if (this.releasesPendingCount == 0 && !this.overflowing.get()) {
+      this.timer.stop();
+      this.scheduled.set(false);
+
+      /*
+       * A producer might have appended an event after the ring was last
+       * polled, but before the scheduled flag was cleared. That producer
+       * will not have started the timer, so we must.
+       */
+
+      final var ready =
+        this.sequences.get((int) (this.head & this.mask)) == this.head + 1L;
+      if (ready || this.overflowing.get()) {
+        if (this.scheduled.compareAndSet(false, true)) {
+          this.timer.start();
+        }
+      }
+    }
+  }
+
+  private void applyOverflow()
+  {
+    for (int index = 0; index < this.overflow.length(); ++index) {
+      switch (this.overflow.getAndSet(index, OVERFLOW_NONE)) {
+        case OVERFLOW_PRESS -> this.apply((index << 1) | 1);
+        case OVERFLOW_RELEASE -> this.apply(index << 1);
+        default -> {
+
+        }
+      }
+    }
+  }
+
+  private void applyReleasesPending()
+  {
+    for (int word = 0; word < this.releasesPending.length; ++word) {
+      var bits = this.releasesPending[word];
+      this.releasesPending[word] = 0L;
+      while (bits != 0L) {
+        final var bit = Long.numberOfTrailingZeros(bits);
+        this.keys.release((word << 6) + bit);
+        bits &= bits - 1L;
+      }
+    }
+    this.releasesPendingCount = 0;
+  }
+
+  private void apply(
+    final int value)
+  {
+    final var index = value >>> 1;
+    final var word = index >>> 6;
+    final var bit = 1L << index;
+
+    if ((value & 1) == 1) {
+      if ((this.releasesPending[word] & bit) != 0L) {
+        this.releasesPending[word] &= ~bit;
+        --this.releasesPendingCount;
+        return;
+      }
+      if (this.keys.press(index, true)) {
+        this.pressedThisPulse[word] |= bit;
+      }
+      return;
+    }
+
+    if ((this.pressedThisPulse[word] & bit) != 0L) {
+      if ((this.releasesPending[word] & bit) == 0L) {
+        this.releasesPending[word] |= bit;
+        ++this.releasesPendingCount;
+      }
+      return;
+    }
+    this.keys.release(index);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+/**
+ * The type of objects that receive key input from an
+ * {@link IvKeyPointerTracker}.
+ */
+
+public interface IvKeyPointerTargetType
+{
+  /**
+   * Find the key at the given position.
+   *
+   * @param x The X position in the local coordinates of the piano
+   * @param y The Y position in the local coordinates of the piano
+   *
+   * @return The key index, or {@code -1} if there is no key at the position
+   */
+
+  int keyAt(
+    double x,
+    double y);
+
+  /**
+   * The key under the cursor changed.
+   *
+   * @param keyPrevious The previous key, or {@code -1}
+   * @param keyCurrent  The current key, or {@code -1}
+   */
+
+  void onKeyHoverChanged(
+    int keyPrevious,
+    int keyCurrent);
+
+  /**
+   * A key was pressed with the primary mouse button.
+   *
+   * @param key The key
+   */
+
+  void onKeyPointerPressed(
+    int key);
+
+  /**
+   * A key that was pressed with the primary mouse button was released.
+   *
+   * @param key The key
+   */
+
+  void onKeyPointerReleased(
+    int key);
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import javafx.event.EventHandler;
+import javafx.scene.Node;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+import java.util.Objects;
+
+/**
+ * A single mouse event filter that tracks the key under the cursor and
+ * the key being pressed (and dragged over) with the primary mouse button.
+ * Keys are resolved arithmetically by the target, so no per-key handlers
+ * are required and drags do not depend on scene graph picking.
+ */
+
+public final class IvKeyPointerTracker
+  implements EventHandler<MouseEvent>
+{
+  private final IvKeyPointerTargetType target;
+  private int keyHovered;
+  private int keyDragged;
+
+  private IvKeyPointerTracker(
+    final IvKeyPointerTargetType inTarget)
+  {
+    this.target = Objects.requireNonNull(inTarget, "target");
+    this.keyHovered = -1;
+    this.keyDragged = -1;
+  }
+
+  /**
+   * Install a tracker on the given node.
+   *
+   * @param node   The node
+   * @param target The target that will receive input
+   *
+   * @return The tracker
+   */
+
+  public static IvKeyPointerTracker install(
+    final Node node,
+    final IvKeyPointerTargetType target)
+  {
+    final var tracker = new IvKeyPointerTracker(target);
+    node.addEventFilter(MouseEvent.ANY, tracker);
+    return tracker;
+  }
+
+  /**
+   * @return The key currently under the cursor, or {@code -1}
+   */
+
+  public int keyHovered()
+  {
+    return this.keyHovered;
+  }
+
+  @Override
+  public void handle(
+    final MouseEvent event)
+  {
+    final var type = event.getEventType();
+    if (type == MouseEvent.MOUSE_MOVED) {
+      this.hover(this.keyAt(event));
+    } else if (type == MouseEvent.MOUSE_EXITED) {
+      if (this.keyDragged == -1) {
+        this.hover(-1);
+      }
+    } else if (type == MouseEvent.MOUSE_PRESSED) {
+      this.onPressed(event);
+    } else if (type == MouseEvent.MOUSE_DRAGGED) {
+      this.onDragged(event);
+    } else if (type == MouseEvent.MOUSE_RELEASED) {
+      this.onReleased(event);
+    }
+  }
+
+  private int keyAt(
+    final MouseEvent event)
+  {
+    return this.target.keyAt(event.getX(), event.getY());
+  }
+
+  private void hover(
+    final int key)
+  {
+    final var previous = this.keyHovered;
+    if (previous != key) {
+      this.keyHovered = key;
+      this.target.onKeyHoverChanged(previous, key);
+    }
+  }
+
+  private void onPressed(
+    final MouseEvent event)
+  {
+    if (event.getButton() == MouseButton.PRIMARY) {
+      final var key = this.keyAt(event);
+      this.hover(key);
+      if (key != -1) {
+        this.keyDragged = key;
+        this.target.onKeyPointerPressed(key);
+      }
+    }
+  }
+
+  /**
+   * As the cursor is dragged over the keys, we need to artificially
+   * press and release those keys as the cursor passes over them.
+   */
+
+  private void onDragged(
+    final MouseEvent event)
+  {
+    if (event.isPrimaryButtonDown()) {
+      final var key = this.keyAt(event);
+      final var previous = this.keyDragged;
+      if (key == previous) {
+        return;
+      }
+
+      if (previous != -1) {
+        this.target.onKeyPointerReleased(previous);
+      }
+      this.keyDragged = key;
+      this.hover(key);
+      if (key != -1) {
+        this.target.onKeyPointerPressed(key);
+      }
+    }
+  }
+
+  private void onReleased(
+    final MouseEvent event)
+  {
+    if (event.getButton() == MouseButton.PRIMARY) {
+      final var previous = this.keyDragged;
+      if (previous != -1) {
+        this.keyDragged = -1;
+        this.target.onKeyPointerReleased(previous);
+      }
+      this.hover(this.keyAt(event));
+    }
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeySet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * The set of pressed keys on a keyboard, stored as a pair of bitsets. One
+ * bitset records which keys are pressed, and the other records which of
+ * those keys were pressed synthetically. Pressing and releasing keys does
+ * not allocate.
+ *
+ * Every change is also published to an {@link IvKeyPressedView} for
+ * readers on other threads. Bulk changes are published as a single update
+ * once all of the affected keys have changed state, so that concurrent
+ * readers never observe a partially applied chord. A bulk change may not
+ * be started from within the listener while another bulk change is being
+ * applied; such nested calls are rejected with
+ * {@link IllegalStateException} and leave the outer change intact. Single
+ * presses and releases made from within the listener are permitted, and
+ * the outer change does not undo them.
+ */
+
+public final class IvKeyPressedSet
+{
+  private final long[] pressed;
+  private final long[] synthesized;
+  private final long[] target;
+  private final int keyCount;
+  private final IvKeyPressedListenerType listener;
+  private final IvKeyPressedView view;
+  private boolean applying;
+  private int count;
+  private IvKeySet snapshot;
+
+  /**
+   * The set of pressed keys on a keyboard.
+   *
+   * @param inKeyCount The number of keys
+   * @param inListener The listener notified when a key changes state
+   */
+
+  public IvKeyPressedSet(
+    final int inKeyCount,
+    final IvKeyPressedListenerType inListener)
+  {
+    this.keyCount =
+      inKeyCount;
+    this.listener =
+      Objects.requireNonNull(inListener, "listener");
+    this.pressed =
+      new long[wordCount(inKeyCount)];
+    this.synthesized =
+      new long[wordCount(inKeyCount)];
+    this.target =
+      new long[wordCount(inKeyCount)];
+    this.snapshot =
+      IvKeySet.empty();
+    this.view =
+      new IvKeyPressedView(inKeyCount);
+  }
+
+  /**
+   * @return A view of the pressed keys that may be read from any thread
+   */
+
+  public IvKeyPressedView view()
+  {
+    return this.view;
+  }
+
+  private void publishWord(
+    final int word)
+  {
+    if (!this.applying) {
+      this.view.writeBegin();
+      this.view.write(word, this.pressed[word]);
+      this.view.writeEnd();
+    }
+  }
+
+  private static int wordCount(
+    final int keyCount)
+  {
+    return (keyCount + 63) >>> 6;
+  }
+
+  /**
+   * @return The number of keys
+   */
+
+  public int keyCount()
+  {
+    return this.keyCount;
+  }
+
+  /**
+   * @return The number of pressed keys
+   */
+
+  public int pressedCount()
+  {
+    return this.count;
+  }
+
+  /**
+   * @return The lowest pressed key, or {@code -1} if no keys are pressed
+   */
+
+  public int lowestPressed()
+  {
+    if (this.count == 0) {
+      return -1;
+    }
+    for (int word = 0; word < this.pressed.length; ++word) {
+      final var bits = this.pressed[word];
+      if (bits != 0L) {
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The highest pressed key, or {@code -1} if no keys are pressed
+   */
+
+  public int highestPressed()
+  {
+    if (this.count == 0) {
+      return -1;
+    }
+    for (int word = this.pressed.length - 1; word >= 0; --word) {
+      final var bits = this.pressed[word];
+      if (bits != 0L) {
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Call the given consumer for each pressed key, in ascending order.
+   * The consumer must not change the pressed state of keys.
+   *
+   * @param consumer The consumer
+   */
+
+  public void forEachPressed(
+    final IntConsumer consumer)
+  {
+    for (int word = 0; word < this.pressed.length; ++word) {
+      var bits = this.pressed[word];
+      while (bits != 0L) {
+        consumer.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+        bits &= bits - 1L;
+      }
+    }
+  }
+
+  /**
+   * Take an immutable snapshot of the pressed keys. The snapshot is cached
+   * and shared until the pressed state next changes.
+   *
+   * @return The pressed keys
+   */
+
+  public IvKeySet snapshot()
+  {
+    var result = this.snapshot;
+    if (result == null) {
+      result = IvKeySet.ofWords(this.pressed);
+      this.snapshot = result;
+    }
+    return result;
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return {@code true} if the key is pressed
+   */
+
+  public boolean isPressed(
+    final int index)
+  {
+    return (this.pressed[index >>> 6] & (1L << index)) != 0L;
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return {@code true} if the key is pressed and was pressed synthetically
+   */
+
+  public boolean isSynthesized(
+    final int index)
+  {
+    return (this.synthesized[index >>> 6] & (1L << index)) != 0L;
+  }
+
+  /**
+   * Press a key. Pressing a key that is already pressed has no effect.
+   *
+   * @param index         The key index
+   * @param isSynthesized {@code true} if this is a synthetic keypress
+   *
+   * @return {@code true} if the key was not already pressed
+   */
+
+  public boolean press(
+    final int index,
+    final boolean isSynthesized)
+  {
+    final var word = index >>> 6;
+    final var bit = 1L << index;
+    if ((this.pressed[word] & bit) != 0L) {
+      return false;
+    }
+
+    this.pressed[word] |= bit;
+    this.target[word] |= bit;
+    if (isSynthesized) {
+      this.synthesized[word] |= bit;
+    }
+    ++this.count;
+    this.snapshot = null;
+    this.publishWord(word);
+    this.listener.onKeyPressedChanged(index, true, isSynthesized);
+    return true;
+  }
+
+  /**
+   * Release a key. Releasing a key that is not pressed has no effect.
+   *
+   * @param index The key index
+   *
+   * @return {@code true} if the key was pressed
+   */
+
+  public boolean release(
+    final int index)
+  {
+    final var word = index >>> 6;
+    final var bit = 1L << index;
+    if ((this.pressed[word] & bit) == 0L) {
+      return false;
+    }
+
+    final var wasSynthesized = (this.synthesized[word] & bit) != 0L;
+    this.pressed[word] &= ~bit;
+    this.target[word] &= ~bit;
+    this.synthesized[word] &= ~bit;
+    --this.count;
+    this.snapshot = null;
+    this.publishWord(word);
+    this.listener.onKeyPressedChanged(index, false, wasSynthesized);
+    return true;
+  }
+
+  /**
+   * Set the pressed state of all keys at once. Keys set in the given bitset
+   * are pressed, and all other keys are released. Indices outside of the
+   * keyboard are ignored.
+   *
+   * @param keys          The keys that should be pressed
+   * @param isSynthesized {@code true} if this is a synthetic keypress
+   *
+   * @throws IllegalStateException If another bulk change is in progress
+   */
+
+  public void setPressed(
+    final BitSet keys,
+    final boolean isSynthesized)
+    throws IllegalStateException
+  {
+    this.checkNotApplying();
+    Arrays.fill(this.target, 0L);
+    for (int index = keys.nextSetBit(0);
+         index >= 0 && index < this.keyCount;
+         index = keys.nextSetBit(index + 1)) {
+      this.target[index >>> 6] |= 1L << index;
+    }
+    this.apply(isSynthesized);
+  }
+
+  /**
+   * Press all the given keys. Indices outside of the keyboard are ignored.
+   *
+   * @param indices       The keys
+   * @param isSynthesized {@code true} if this is a synthetic keypress
+   *
+   * @throws IllegalStateException If another bulk change is in progress
+   */
+
+  public void pressAll(
+    final int[] indices,
+    final boolean isSynthesized)
+    throws IllegalStateException
+  {
+    this.checkNotApplying();
+    System.arraycopy(this.pressed, 0, this.target, 0, this.target.length);
+    for (final var index : indices) {
+      if (index >= 0 && index < this.keyCount) {
+        this.target[index >>> 6] |= 1L << index;
+      }
+    }
+    this.apply(isSynthesized);
+  }
+
+  /**
+   * Release all the given keys. Indices outside of the keyboard are ignored.
+   *
+   * @param indices The keys
+   *
+   * @throws IllegalStateException If another bulk change is in progress
+   */
+
+  public void releaseAll(
+    final int[] indices)
+    throws IllegalStateException
+  {
+    this.checkNotApplying();
+    System.arraycopy(this.pressed, 0, this.target, 0, this.target.length);
+    for (final var index : indices) {
+      if (index >= 0 && index < this.keyCount) {
+        this.target[index >>> 6] &= ~(1L << index);
+      }
+    }
+    this.apply(false);
+  }
+
+  /**
+   * The target state is shared by all bulk changes, so a bulk change that
+   * started from within a listener during {@link #applyDiff(boolean)}
+   * would overwrite the target of the change in progress.
+   */
+
+  private void checkNotApplying()
+  {
+    if (this.applying) {
+      throw new IllegalStateException(
+        "A bulk key change cannot be started while another is in progress."
+      );
+    }
+  }
+
+  /**
+   * Transition from the current state to the target state. Each word of
+   * the current state is XORed against the corresponding word of the target
+   * state, and only the differing bits are visited, in ascending order.
+   */
+
+  private void apply(
+    final boolean isSynthesized)
+  {
+    this.applying = true;
+    try {
+      this.applyDiff(isSynthesized);
+    } finally {
+      this.applying = false;
+      this.view.writeBegin();
+      for (int word = 0; word < this.pressed.length; ++word) {
+        this.view.write(word, this.pressed[word]);
+      }
+      this.view.writeEnd();
+    }
+  }
+
+  private void applyDiff(
+    final boolean isSynthesized)
+  {
+    for (int word = 0; word < this.target.length; ++word) {
+
+      /*
+       * The difference is recomputed after every change, because the
+       * listener may press or release keys in this word.
+       */
+
+      while (true) {
+        final var wordTarget = this.target[word];
+        final var diff = this.pressed[word] ^ wordTarget;
+        if (diff == 0L) {
+          break;
+        }
+
+        final var bitIndex = Long.numberOfTrailingZeros(diff);
+        final var bit = 1L << bitIndex;
+        final var index = (word << 6) + bitIndex;
+
+        if ((wordTarget & bit) != 0L) {
+          this.press(index, isSynthesized);
+        } else {
+          this.release(index);
+        }
+      }
+    }
+  }
+}
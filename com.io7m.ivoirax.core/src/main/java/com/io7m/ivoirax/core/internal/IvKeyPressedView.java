@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyPressedViewType;
+import com.io7m.ivoirax.core.IvKeySet;
+
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A copy of a set of pressed keys that is published for concurrent readers
+ * and protected by a sequence lock.
+ *
+ * The single writer increments the version to an odd value before changing
+ * any words, and to the next even value afterwards. Readers that require a
+ * consistent view of more than one word read the version, read the words,
+ * and then read the version again, retrying if the version was odd or
+ * changed in between. Readers that only look at a single key read a single
+ * word and need no retry.
+ */
+
+public final class IvKeyPressedView
+  implements IvKeyPressedViewType
+{
+  private final AtomicLongArray words;
+  private final AtomicLong version;
+  private final int keyCount;
+
+  /**
+   * A view of pressed keys.
+   *
+   * @param inKeyCount The number of keys
+   */
+
+  public IvKeyPressedView(
+    final int inKeyCount)
+  {
+    this.keyCount =
+      inKeyCount;
+    this.words =
+      new AtomicLongArray((inKeyCount + 63) >>> 6);
+    this.version =
+      new AtomicLong();
+  }
+
+  /**
+   * Begin writing. Must only be called by the writer.
+   */
+
+  void writeBegin()
+  {
+    this.version.setPlain(this.version.getPlain() + 1L);
+    VarHandle.storeStoreFence();
+  }
+
+  /**
+   * Write a word. Must only be called by the writer, between
+   * {@link #writeBegin()} and {@link #writeEnd()}.
+   *
+   * @param word  The word index
+   * @param value The word value
+   */
+
+  void write(
+    final int word,
+    final long value)
+  {
+    this.words.setOpaque(word, value);
+  }
+
+  /**
+   * Finish writing. Must only be called by the writer.
+   */
+
+  void writeEnd()
+  {
+    this.version.setRelease(this.version.getPlain() + 1L);
+  }
+
+  @Override
+  public int keyCount()
+  {
+    return this.keyCount;
+  }
+
+  @Override
+  public int wordCount()
+  {
+    return this.words.length();
+  }
+
+  @Override
+  public boolean isPressed(
+    final int index)
+  {
+    Objects.checkIndex(index, this.keyCount);
+    return (this.words.getAcquire(index >>> 6) & (1L << index)) != 0L;
+  }
+
+  @Override
+  public void copyInto(
+    final long[] output)
+  {
+    final var count = this.words.length();
+    Objects.checkFromIndexSize(0, count, output.length);
+
+    while (true) {
+      final var before = this.version.getAcquire();
+      if ((before & 1L) == 0L) {
+        for (int word = 0; word < count; ++word) {
+          output[word] = this.words.getOpaque(word);
+        }
+        VarHandle.loadLoadFence();
+        if (this.version.getPlain() == before) {
+          return;
+        }
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  @Override
+  public IvKeySet snapshot()
+  {
+    final var output = new long[this.words.length()];
+    this.copyInto(output);
+    return IvKeySet.ofWords(output);
+  }
+}
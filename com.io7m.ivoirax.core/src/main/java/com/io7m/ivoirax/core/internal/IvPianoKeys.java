@@ -0,0 +1,558 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.core.internal;
+
+import com.io7m.ivoirax.core.IvKeyEventBatchListenerType;
+import com.io7m.ivoirax.core.IvKeyEventHandlerType;
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeyEventOverflowPolicy;
+import com.io7m.ivoirax.core.IvKeyEventRingType;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressedViewType;
+import com.io7m.ivoirax.core.IvKeySet;
+import com.io7m.ivoirax.core.IvKeySubscriptionType;
+import javafx.scene.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.IntConsumer;
+
+/**
+ * The key state and event plumbing that every piano shares.
+ *
+ * Each piano owns one instance of this class, which in turn owns the set of
+ * pressed keys, the queue of presses and releases submitted from other
+ * threads, the dispatcher through which every key event is published, and
+ * the batcher that delivers those events once per pulse. Publishers are
+ * created on demand and subscribe themselves to the dispatcher, and the
+ * ring buffer of packed events is created and subscribed the first time it
+ * is requested.
+ *
+ * The pianos implement the event and pressed-state methods of
+ * {@link com.io7m.ivoirax.core.IvPianoType} by delegating to the methods of
+ * the same name here, and are otherwise only responsible for drawing keys
+ * and for reporting pointer input via {@link #enter(int)},
+ * {@link #exit(int)}, {@link #pointerPress(int)} and
+ * {@link #pointerRelease(int)}.
+ */
+
+public final class IvPianoKeys
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvPianoKeys.class);
+
+  private static final int KEY_RING_CAPACITY = 4096;
+
+  private IvKeyEventRing keyRing;
+  private final IntConsumer keyChanged;
+  private final IvKeyEventBatcher keyBatches;
+  private final IvKeyEventDispatcher keyEvents;
+  private final IvKeyInputQueue keysLater;
+  private final IvKeyPressedSet keysPressed;
+  private final Object keyRingLock;
+  private final int keyCount;
+
+  /**
+   * The key state and event plumbing of a piano.
+   *
+   * @param inOwner      The piano that owns the keys
+   * @param inKeyCount   The number of keys
+   * @param inKeyChanged A function called with the index of a key whenever
+   *                     the key's pressed state changes, after the
+   *                     resulting event has been published
+   */
+
+  public IvPianoKeys(
+    final Node inOwner,
+    final int inKeyCount,
+    final IntConsumer inKeyChanged)
+  {
+    this.keyCount =
+      inKeyCount;
+    this.keyChanged =
+      Objects.requireNonNull(inKeyChanged, "keyChanged");
+    this.keysPressed =
+      new IvKeyPressedSet(inKeyCount, this::onKeyPressedChanged);
+    this.keysLater =
+      new IvKeyInputQueue(this.keysPressed);
+    this.keyEvents =
+      new IvKeyEventDispatcher(inKeyCount);
+    this.keyBatches =
+      new IvKeyEventBatcher(inOwner, this.keyEvents);
+    this.keyRingLock =
+      new Object();
+  }
+
+  /**
+   * The cursor moved over a key.
+   *
+   * @param index The key index
+   */
+
+  public void enter(
+    final int index)
+  {
+    this.keyEvents.enter(index);
+  }
+
+  /**
+   * The cursor moved off a key.
+   *
+   * @param index The key index
+   */
+
+  public void exit(
+    final int index)
+  {
+    this.keyEvents.exit(index);
+  }
+
+  /**
+   * The user pressed a key with the pointer.
+   *
+   * @param index The key index
+   */
+
+  public void pointerPress(
+    final int index)
+  {
+    this.keysPressed.press(index, false);
+  }
+
+  /**
+   * The user released a key with the pointer.
+   *
+   * @param index The key index
+   */
+
+  public void pointerRelease(
+    final int index)
+  {
+    this.keysPressed.release(index);
+  }
+
+  /**
+   * @param handler The handler
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#setOnKeyEventHandler(IvKeyEventHandlerType)
+   */
+
+  public void setOnKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    this.keyEvents.setListener(new IvKeyEventHandlerAdapter(handler));
+  }
+
+  /**
+   * @param handler  The handler
+   * @param executor The executor on which the handler will run
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#setOnKeyEventHandler(IvKeyEventHandlerType, Executor)
+   */
+
+  public void setOnKeyEventHandler(
+    final IvKeyEventHandlerType handler,
+    final Executor executor)
+  {
+    this.keyEvents.setListener(
+      new IvKeyEventExecutorAdapter(handler, executor, this.keyCount)
+    );
+  }
+
+  /**
+   * @param listener The listener
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#setOnKeyEventListener(IvKeyEventListenerType)
+   */
+
+  public void setOnKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    this.keyEvents.setListener(listener);
+  }
+
+  /**
+   * @param listener The listener
+   * @param kinds    The kinds of events the listener wants
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#setOnKeyEventListener(IvKeyEventListenerType, Set)
+   */
+
+  public void setOnKeyEventListener(
+    final IvKeyEventListenerType listener,
+    final Set<IvKeyEventKind> kinds)
+  {
+    this.keyEvents.setListener(listener, IvKeyEventDispatcher.maskOf(kinds));
+  }
+
+  /**
+   * @param handler The handler
+   *
+   * @return The subscription
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#addKeyEventHandler(IvKeyEventHandlerType)
+   */
+
+  public IvKeySubscriptionType addKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    return this.keyEvents.subscribe(
+      handler,
+      new IvKeyEventHandlerAdapter(handler)
+    );
+  }
+
+  /**
+   * @param handler The handler
+   * @param kinds   The kinds of events the handler wants
+   *
+   * @return The subscription
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#addKeyEventHandler(IvKeyEventHandlerType, Set)
+   */
+
+  public IvKeySubscriptionType addKeyEventHandler(
+    final IvKeyEventHandlerType handler,
+    final Set<IvKeyEventKind> kinds)
+  {
+    return this.keyEvents.subscribe(
+      handler,
+      new IvKeyEventHandlerAdapter(handler),
+      IvKeyEventDispatcher.maskOf(kinds)
+    );
+  }
+
+  /**
+   * @param handler The handler
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#removeKeyEventHandler(IvKeyEventHandlerType)
+   */
+
+  public void removeKeyEventHandler(
+    final IvKeyEventHandlerType handler)
+  {
+    this.keyEvents.unsubscribeAll(handler);
+  }
+
+  /**
+   * @param listener The listener
+   *
+   * @return The subscription
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#addKeyEventListener(IvKeyEventListenerType)
+   */
+
+  public IvKeySubscriptionType addKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    return this.keyEvents.subscribe(listener, listener);
+  }
+
+  /**
+   * @param listener The listener
+   * @param kinds    The kinds of events the listener wants
+   *
+   * @return The subscription
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#addKeyEventListener(IvKeyEventListenerType, Set)
+   */
+
+  public IvKeySubscriptionType addKeyEventListener(
+    final IvKeyEventListenerType listener,
+    final Set<IvKeyEventKind> kinds)
+  {
+    return this.keyEvents.subscribe(
+      listener,
+      listener,
+      IvKeyEventDispatcher.maskOf(kinds)
+    );
+  }
+
+  /**
+   * @param listener The listener
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#removeKeyEventListener(IvKeyEventListenerType)
+   */
+
+  public void removeKeyEventListener(
+    final IvKeyEventListenerType listener)
+  {
+    this.keyEvents.unsubscribeAll(listener);
+  }
+
+  /**
+   * @param listener The listener
+   *
+   * @return The subscription
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#addKeyEventBatchListener(IvKeyEventBatchListenerType)
+   */
+
+  public IvKeySubscriptionType addKeyEventBatchListener(
+    final IvKeyEventBatchListenerType listener)
+  {
+    return this.keyBatches.subscribe(listener);
+  }
+
+  /**
+   * @param listener The listener
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#removeKeyEventBatchListener(IvKeyEventBatchListenerType)
+   */
+
+  public void removeKeyEventBatchListener(
+    final IvKeyEventBatchListenerType listener)
+  {
+    this.keyBatches.unsubscribeAll(listener);
+  }
+
+  /**
+   * @param policy   The overflow policy
+   * @param capacity The per-subscriber buffer capacity
+   *
+   * @return A new publisher
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyEventPublisher(IvKeyEventOverflowPolicy, int)
+   */
+
+  public Flow.Publisher<IvKeyEventType> keyEventPublisher(
+    final IvKeyEventOverflowPolicy policy,
+    final int capacity)
+  {
+    return new IvKeyEventPublisher(this.keyEvents, policy, capacity);
+  }
+
+  /**
+   * @return The ring buffer of packed key events
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyEventRing()
+   */
+
+  public IvKeyEventRingType keyEventRing()
+  {
+    synchronized (this.keyRingLock) {
+      if (this.keyRing == null) {
+        this.keyRing = new IvKeyEventRing(this.keyCount, KEY_RING_CAPACITY);
+        this.keyEvents.subscribe(this.keyRing, this.keyRing);
+      }
+      return this.keyRing;
+    }
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyPress(int)
+   */
+
+  public void keyPress(
+    final int index)
+  {
+    if (index >= 0 && index < this.keyCount) {
+      this.keysPressed.press(index, true);
+    }
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyRelease(int)
+   */
+
+  public void keyRelease(
+    final int index)
+  {
+    if (index >= 0 && index < this.keyCount) {
+      this.keysPressed.release(index);
+    }
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyPressLater(int)
+   */
+
+  public void keyPressLater(
+    final int index)
+  {
+    this.keysLater.press(index);
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyReleaseLater(int)
+   */
+
+  public void keyReleaseLater(
+    final int index)
+  {
+    this.keysLater.release(index);
+  }
+
+  /**
+   * @param indices The key indices
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyPressAll(int[])
+   */
+
+  public void keyPressAll(
+    final int[] indices)
+  {
+    Objects.requireNonNull(indices, "indices");
+    this.keysPressed.pressAll(indices, true);
+  }
+
+  /**
+   * @param indices The key indices
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyReleaseAll(int[])
+   */
+
+  public void keyReleaseAll(
+    final int[] indices)
+  {
+    Objects.requireNonNull(indices, "indices");
+    this.keysPressed.releaseAll(indices);
+  }
+
+  /**
+   * @param pressed The keys that should be pressed
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#setPressedKeys(BitSet)
+   */
+
+  public void setPressedKeys(
+    final BitSet pressed)
+  {
+    Objects.requireNonNull(pressed, "pressed");
+    this.keysPressed.setPressed(pressed, true);
+  }
+
+  /**
+   * @param index The key index
+   *
+   * @return {@code true} if the key is pressed
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#keyIsPressed(int)
+   */
+
+  public boolean keyIsPressed(
+    final int index)
+  {
+    if (index >= 0 && index < this.keyCount) {
+      return this.keysPressed.isPressed(index);
+    }
+    return false;
+  }
+
+  /**
+   * @param consumer The consumer
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#forEachPressed(IntConsumer)
+   */
+
+  public void forEachPressed(
+    final IntConsumer consumer)
+  {
+    Objects.requireNonNull(consumer, "consumer");
+    this.keysPressed.forEachPressed(consumer);
+  }
+
+  /**
+   * @return The number of pressed keys
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#pressedCount()
+   */
+
+  public int pressedCount()
+  {
+    return this.keysPressed.pressedCount();
+  }
+
+  /**
+   * @return The lowest pressed key, or {@code -1}
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#lowestPressed()
+   */
+
+  public int lowestPressed()
+  {
+    return this.keysPressed.lowestPressed();
+  }
+
+  /**
+   * @return The highest pressed key, or {@code -1}
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#highestPressed()
+   */
+
+  public int highestPressed()
+  {
+    return this.keysPressed.highestPressed();
+  }
+
+  /**
+   * @return A snapshot of the pressed keys
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#pressedSnapshot()
+   */
+
+  public IvKeySet pressedSnapshot()
+  {
+    return this.keysPressed.snapshot();
+  }
+
+  /**
+   * @return A view of the pressed keys readable from any thread
+   *
+   * @see com.io7m.ivoirax.core.IvPianoType#pressedView()
+   */
+
+  public IvKeyPressedViewType pressedView()
+  {
+    return this.keysPressed.view();
+  }
+
+  private void onKeyPressedChanged(
+    final int index,
+    final boolean pressed,
+    final boolean isSynthesized)
+  {
+    if (pressed) {
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("KeyPressed: {}", Integer.valueOf(index));
+      }
+      this.keyEvents.press(index, isSynthesized);
+    } else {
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("KeyReleased: {}", Integer.valueOf(index));
+      }
+      this.keyEvents.release(index);
+    }
+
+    this.keyChanged.accept(index);
+  }
+}
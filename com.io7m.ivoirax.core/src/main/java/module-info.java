@@ -28,4 +28,7 @@ module com.io7m.ivoirax.core
   requires javafx.controls;
 
   exports com.io7m.ivoirax.core;
+
+  exports com.io7m.ivoirax.core.internal
+    to com.io7m.ivoirax.tests;
 }
@@ -18,6 +18,7 @@
 package com.io7m.ivoirax.demo;
 
 import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvPianoTheme;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
@@ -54,6 +55,19 @@ public final class IvHorizontalPianoMain
     1.0
     );
 
+  private static final IvPianoTheme THEME_BLUE =
+    new IvPianoTheme(
+      Color.color(0.0, 0.1, 0.6),
+      Color.color(0.0, 0.2, 0.7),
+      Color.color(0.0, 0.3, 0.8),
+      Color.color(0.2, 0.5, 1.0),
+      Color.color(0.3, 0.6, 1.0),
+      Color.color(0.4, 0.7, 1.0),
+      Color.color(0.7, 0.9, 1.0),
+      Color.color(0.7, 0.9, 1.0),
+      Color.gray(1.0)
+    );
+
   private final Stage stage;
   private VBox root;
   private Scene scene;
@@ -118,49 +132,9 @@ public final class IvHorizontalPianoMain
     this.colorCheck.selectedProperty()
       .addListener((observable, oldValue, newValue) -> {
         if (newValue.booleanValue()) {
-          this.piano.colorKeyTextProperty()
-            .set(Color.gray(1.0));
-
-          this.piano.colorStrokeKeyAccidentalProperty()
-            .set(Color.color(0.7, 0.9, 1.0));
-          this.piano.colorStrokeKeyNaturalProperty()
-            .set(Color.color(0.7, 0.9, 1.0));
-
-          this.piano.colorKeyNaturalProperty()
-            .set(Color.color(0.0, 0.1, 0.6));
-          this.piano.colorKeyNaturalOverProperty()
-            .set(Color.color(0.0, 0.2, 0.7));
-          this.piano.colorKeyNaturalPressedProperty()
-            .set(Color.color(0.0, 0.3, 0.8));
-
-          this.piano.colorKeyAccidentalProperty()
-            .set(Color.color(0.2, 0.5, 1.0));
-          this.piano.colorKeyAccidentalOverProperty()
-            .set(Color.color(0.3, 0.6, 1.0));
-          this.piano.colorKeyAccidentalPressedProperty()
-            .set(Color.color(0.4, 0.7, 1.0));
+          this.piano.setTheme(THEME_BLUE);
         } else {
-          this.piano.colorKeyTextProperty()
-            .set(Color.gray(0.0));
-
-          this.piano.colorStrokeKeyAccidentalProperty()
-            .set(Color.gray(0.0));
-          this.piano.colorStrokeKeyNaturalProperty()
-            .set(Color.gray(0.0));
-
-          this.piano.colorKeyNaturalProperty()
-            .set(Color.gray(1.0));
-          this.piano.colorKeyNaturalOverProperty()
-            .set(Color.gray(0.9));
-          this.piano.colorKeyNaturalPressedProperty()
-            .set(Color.gray(0.8));
-
-          this.piano.colorKeyAccidentalProperty()
-            .set(Color.gray(0.1));
-          this.piano.colorKeyAccidentalOverProperty()
-            .set(Color.gray(0.3));
-          this.piano.colorKeyAccidentalPressedProperty()
-            .set(Color.gray(0.5));
+          this.piano.setTheme(IvPianoTheme.defaultTheme());
         }
       });
 
@@ -0,0 +1,629 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.midi;
+
+import com.io7m.ivoirax.core.IvPianoType;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A player that plays the notes of a MIDI sequence on a piano.
+ *
+ * When the player is created, the notes of all tracks are flattened into a
+ * single time-ordered array of key presses and releases, with tick times
+ * converted to nanoseconds through the sequence's tempo map. Overlapping
+ * notes that map to the same key on different channels are merged so that
+ * the key is released only when the last of them ends. A {@code NOTE_ON}
+ * for a note that is already sounding on the same channel is treated as a
+ * retrigger of that note rather than as a second, nested note, so the
+ * next {@code NOTE_OFF} on that channel ends it. Notes that fall outside
+ * of the keyboard are discarded.
+ *
+ * Playback is driven by an {@link AnimationTimer}. On each pulse, every
+ * note change due before the pulse time plus a small look-ahead window is
+ * applied to the piano in a single call to
+ * {@link IvPianoType#setPressedKeys(BitSet)}, so each note appears on the
+ * frame nearest to its time. A key that is pressed and released within a
+ * single pulse is released on the following pulse so that it is visible
+ * for at least one frame; all other changes due in that pulse are still
+ * applied on time. If the key is pressed again before its pending release
+ * is applied, the press and the pending release are collapsed and the key
+ * simply remains pressed. The player owns the pressed state of the piano
+ * while playing; keys pressed by other means will be released.
+ *
+ * Seeking is logarithmic in the number of note changes: a checkpoint of
+ * the complete pressed state is stored at fixed intervals, so the state at
+ * any time is rebuilt from the nearest preceding checkpoint found by
+ * binary search.
+ */
+
+public final class IvMidiFilePlayer
+{
+  /**
+   * The default look-ahead window; half of a nominal 60Hz frame.
+   */
+
+  public static final Duration LOOK_AHEAD_DEFAULT =
+    Duration.ofNanos(1_000_000_000L / 120L);
+
+  private static final int CHECKPOINT_INTERVAL = 256;
+  private static final long TEMPO_DEFAULT = 500_000L;
+  private static final int META_TEMPO = 0x51;
+  private static final int NOTE_COUNT = 128;
+  private static final int CHANNEL_COUNT = 16;
+
+  private final IvPianoType piano;
+  private final long[] times;
+  private final int[] changes;
+  private final long[] checkpoints;
+  private final int words;
+  private final long lookAheadNanos;
+  private final BitSet state;
+  private final BitSet pressedThisPulse;
+  private final BitSet releasesPending;
+  private final AnimationTimer timer;
+  private CompletableFuture<Void> completion;
+  private boolean playing;
+  private boolean started;
+  private long timeStart;
+  private long timeBase;
+  private long timeCurrent;
+  private int position;
+
+  private IvMidiFilePlayer(
+    final IvPianoType inPiano,
+    final long[] inTimes,
+    final int[] inChanges,
+    final long inLookAheadNanos)
+  {
+    this.piano =
+      Objects.requireNonNull(inPiano, "piano");
+    this.times =
+      inTimes;
+    this.changes =
+      inChanges;
+    this.words =
+      (inPiano.keyCount() + 63) >>> 6;
+    this.checkpoints =
+      checkpointsOf(inChanges, this.words);
+    this.lookAheadNanos =
+      inLookAheadNanos;
+    this.state =
+      new BitSet(inPiano.keyCount());
+    this.pressedThisPulse =
+      new BitSet(inPiano.keyCount());
+    this.releasesPending =
+      new BitSet(inPiano.keyCount());
+    this.completion =
+      CompletableFuture.completedFuture(null);
+    this.timer = new AnimationTimer()
+    {
+      @Override
+      public void handle(
+        final long now)
+      {
+        IvMidiFilePlayer.this.onPulse(now);
+      }
+    };
+  }
+
+  /**
+   * Load a MIDI file and create a player for it with the default
+   * look-ahead window.
+   *
+   * @param piano      The piano
+   * @param file       The MIDI file
+   * @param noteOffset The MIDI note that corresponds to key index 0
+   *
+   * @return A player
+   *
+   * @throws IOException              On I/O errors
+   * @throws InvalidMidiDataException If the file is not a valid MIDI file
+   */
+
+  public static IvMidiFilePlayer open(
+    final IvPianoType piano,
+    final Path file,
+    final int noteOffset)
+    throws IOException, InvalidMidiDataException
+  {
+    return create(
+      piano,
+      MidiSystem.getSequence(file.toFile()),
+      noteOffset,
+      LOOK_AHEAD_DEFAULT
+    );
+  }
+
+  /**
+   * Create a player for a MIDI sequence. The sequence is not retained.
+   *
+   * @param piano      The piano
+   * @param sequence   The sequence
+   * @param noteOffset The MIDI note that corresponds to key index 0
+   * @param lookAhead  The look-ahead window
+   *
+   * @return A player
+   */
+
+  public static IvMidiFilePlayer create(
+    final IvPianoType piano,
+    final Sequence sequence,
+    final int noteOffset,
+    final Duration lookAhead)
+  {
+    Objects.requireNonNull(piano, "piano");
+    Objects.requireNonNull(sequence, "sequence");
+    Objects.requireNonNull(lookAhead, "lookAhead");
+
+    if (lookAhead.isNegative()) {
+      throw new IllegalArgumentException("Look-ahead must be non-negative.");
+    }
+
+    final var notes = notesOf(sequence);
+    final var tempos = temposOf(sequence);
+    final var keyCount = piano.keyCount();
+
+    var count = 0;
+    final var inTimes = new long[notes.length];
+    final var inChanges = new int[notes.length];
+    final var sounding = new BitSet(CHANNEL_COUNT * NOTE_COUNT);
+    final var depths = new int[NOTE_COUNT];
+    final var timebase = new Timebase(sequence, tempos);
+
+    for (final var note : notes) {
+      final var tick = note >>> 12;
+      final var isOn = (note & 0x800L) != 0L;
+      final var channelNote = (int) (note & 0x7FFL);
+      final var number = channelNote & 0x7F;
+      final var index = number - noteOffset;
+      if (index < 0 || index >= keyCount) {
+        continue;
+      }
+
+      /*
+       * Each (channel, note) pair is either sounding or not, and the key
+       * is pressed while any channel is sounding its note.
+       */
+
+      if (sounding.get(channelNote) == isOn) {
+        continue;
+      }
+      sounding.set(channelNote, isOn);
+      depths[number] += isOn ? 1 : -1;
+      if (depths[number] != (isOn ? 1 : 0)) {
+        continue;
+      }
+
+      inTimes[count] = timebase.nanosOf(tick);
+      inChanges[count] = (index << 1) | (isOn ? 1 : 0);
+      ++count;
+    }
+
+    return new IvMidiFilePlayer(
+      piano,
+      Arrays.copyOf(inTimes, count),
+      Arrays.copyOf(inChanges, count),
+      lookAhead.toNanos()
+    );
+  }
+
+  /**
+   * Collect all note messages from all tracks, packed as
+   * {@code (tick << 12) | (on << 11) | (channel << 7) | note} and sorted. At any given tick,
+   * releases therefore precede presses, so a note that ends exactly where
+   * another begins on the same key is released and then pressed again.
+   */
+
+  private static long[] notesOf(
+    final Sequence sequence)
+  {
+    var count = 0;
+    var notes = new long[256];
+
+    for (final Track track : sequence.getTracks()) {
+      final var size = track.size();
+      for (int index = 0; index < size; ++index) {
+        final var event = track.get(index);
+        if (!(event.getMessage() instanceof final ShortMessage message)) {
+          continue;
+        }
+
+        final long isOn;
+        switch (message.getCommand()) {
+          case ShortMessage.NOTE_ON -> {
+            isOn = message.getData2() == 0 ? 0L : 1L;
+          }
+          case ShortMessage.NOTE_OFF -> {
+            isOn = 0L;
+          }
+          default -> {
+            continue;
+          }
+        }
+
+        if (count == notes.length) {
+          notes = Arrays.copyOf(notes, count << 1);
+        }
+        final var channelNote =
+          ((long) message.getChannel() << 7) | message.getData1();
+        notes[count] = (event.getTick() << 12) | (isOn << 11) | channelNote;
+        ++count;
+      }
+    }
+
+    notes = Arrays.copyOf(notes, count);
+    Arrays.sort(notes);
+    return notes;
+  }
+
+  /**
+   * Collect all tempo changes from all tracks, packed as
+   * {@code (tick << 24) | microsecondsPerQuarterNote} and sorted.
+   */
+
+  private static long[] temposOf(
+    final Sequence sequence)
+  {
+    var count = 0;
+    var tempos = new long[8];
+
+    for (final Track track : sequence.getTracks()) {
+      final var size = track.size();
+      for (int index = 0; index < size; ++index) {
+        final var event = track.get(index);
+        if (!(event.getMessage() instanceof final MetaMessage message)) {
+          continue;
+        }
+        if (message.getType() != META_TEMPO) {
+          continue;
+        }
+
+        final var data = message.getData();
+        if (data.length != 3) {
+          continue;
+        }
+
+        final var tempoHigh = (data[0] & 0xFFL) << 16;
+        final var tempoLow = ((data[1] & 0xFFL) << 8) | (data[2] & 0xFFL);
+        final var tempo = tempoHigh | tempoLow;
+
+        if (count == tempos.length) {
+          tempos = Arrays.copyOf(tempos, count << 1);
+        }
+        tempos[count] = (event.getTick() << 24) | tempo;
+        ++count;
+      }
+    }
+
+    tempos = Arrays.copyOf(tempos, count);
+    Arrays.sort(tempos);
+    return tempos;
+  }
+
+  /**
+   * Calculate the pressed state before every {@link #CHECKPOINT_INTERVAL}th
+   * change. Checkpoint {@code c} occupies {@code words} elements starting
+   * at {@code c * words}.
+   */
+
+  private static long[] checkpointsOf(
+    final int[] changes,
+    final int words)
+  {
+    final var count = (changes.length / CHECKPOINT_INTERVAL) + 1;
+    final var result = new long[count * words];
+    final var current = new long[words];
+
+    for (int index = 0; index < changes.length; ++index) {
+      if (index % CHECKPOINT_INTERVAL == 0) {
+        final var checkpoint = index / CHECKPOINT_INTERVAL;
+        System.arraycopy(current, 0, result, checkpoint * words, words);
+      }
+      applyTo(current, changes[index]);
+    }
+    if (changes.length % CHECKPOINT_INTERVAL == 0) {
+      final var checkpoint = changes.length / CHECKPOINT_INTERVAL;
+      System.arraycopy(current, 0, result, checkpoint * words, words);
+    }
+    return result;
+  }
+
+  private static void applyTo(
+    final long[] keys,
+    final int change)
+  {
+    final var index = change >>> 1;
+    if ((change & 1) == 1) {
+      keys[index >>> 6] |= 1L << index;
+    } else {
+      keys[index >>> 6] &= ~(1L << index);
+    }
+  }
+
+  /**
+   * @return The number of key presses and releases in the sequence
+   */
+
+  public int changeCount()
+  {
+    return this.changes.length;
+  }
+
+  /**
+   * @return The time of the last key press or release in the sequence
+   */
+
+  public Duration duration()
+  {
+    if (this.times.length == 0) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos(this.times[this.times.length - 1]);
+  }
+
+  /**
+   * @return The current playback position; must be called on the FX
+   * application thread
+   */
+
+  public Duration position()
+  {
+    return Duration.ofNanos(this.timeCurrent);
+  }
+
+  /**
+   * Start or resume playback from the current position. This method may be
+   * called from any thread.
+   *
+   * @return A future that is completed when playback reaches the end of the
+   * sequence or is stopped
+   */
+
+  public CompletableFuture<Void> start()
+  {
+    final var future = new CompletableFuture<Void>();
+    Platform.runLater(() -> this.startOnFX(future));
+    return future;
+  }
+
+  /**
+   * Stop playback, leaving the piano and the playback position as they
+   * are. This method may be called from any thread.
+   */
+
+  public void stop()
+  {
+    Platform.runLater(this::finish);
+  }
+
+  /**
+   * Move the playback position to the given time, and set the pressed keys
+   * of the piano to the state immediately before that time. Changes that
+   * occur exactly at the given time are applied when playback continues.
+   * Playback continues from the new position if the player is playing.
+   * This method may be called from any thread.
+   *
+   * @param time The time
+   */
+
+  public void seek(
+    final Duration time)
+  {
+    final var nanos = Math.max(0L, time.toNanos());
+    Platform.runLater(() -> this.seekOnFX(nanos));
+  }
+
+  private void startOnFX(
+    final CompletableFuture<Void> future)
+  {
+    this.completion.complete(null);
+    this.completion = future;
+    this.playing = true;
+    this.started = false;
+    this.timeBase = this.timeCurrent;
+    this.timer.start();
+  }
+
+  private void finish()
+  {
+    this.timer.stop();
+    this.playing = false;
+    this.completion.complete(null);
+  }
+
+  private void seekOnFX(
+    final long nanos)
+  {
+    final var target = this.lowerBound(nanos);
+    final var checkpoint = target / CHECKPOINT_INTERVAL;
+    final var offset = checkpoint * this.words;
+
+    this.state.clear();
+    for (int word = 0; word < this.words; ++word) {
+      var bits = this.checkpoints[offset + word];
+      while (bits != 0L) {
+        final var bit = Long.numberOfTrailingZeros(bits);
+        this.state.set((word << 6) + bit);
+        bits &= bits - 1L;
+      }
+    }
+    for (int index = checkpoint * CHECKPOINT_INTERVAL;
+         index < target;
+         ++index) {
+      final var change = this.changes[index];
+      this.state.set(change >>> 1, (change & 1) == 1);
+    }
+
+    this.releasesPending.clear();
+    this.position = target;
+    this.timeCurrent = nanos;
+    this.timeBase = nanos;
+    this.started = false;
+    this.piano.setPressedKeys(this.state);
+  }
+
+  /**
+   * @return The index of the first change at or after the given time
+   */
+
+  private int lowerBound(
+    final long nanos)
+  {
+    var low = 0;
+    var high = this.times.length;
+    while (low < high) {
+      final var middle = (low + high) >>> 1;
+      if (this.times[middle] < nanos) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private void onPulse(
+    final long now)
+  {
+    if (!this.started) {
+      this.started = true;
+      this.timeStart = now;
+    }
+
+    this.timeCurrent = this.timeBase + (now - this.timeStart);
+    final var due = this.timeCurrent + this.lookAheadNanos;
+
+    /*
+     * Releases that were parked on the previous pulse are applied first.
+     */
+
+    var changed = !this.releasesPending.isEmpty();
+    this.state.andNot(this.releasesPending);
+    this.releasesPending.clear();
+    this.pressedThisPulse.clear();
+
+    while (this.position < this.changes.length) {
+      if (this.times[this.position] > due) {
+        break;
+      }
+      this.applyChange(this.changes[this.position]);
+      ++this.position;
+      changed = true;
+    }
+
+    if (changed) {
+      this.piano.setPressedKeys(this.state);
+    }
+    if (this.position == this.changes.length
+        && this.releasesPending.isEmpty()) {
+      this.finish();
+    }
+  }
+
+  private void applyChange(
+    final int change)
+  {
+    final var index = change >>> 1;
+    if ((change & 1) == 1) {
+      this.state.set(index);
+      this.pressedThisPulse.set(index);
+      this.releasesPending.clear(index);
+    } else if (this.pressedThisPulse.get(index)) {
+      this.releasesPending.set(index);
+    } else {
+      this.state.clear(index);
+    }
+  }
+
+  /**
+   * A conversion from ticks to nanoseconds. Ticks must be converted in
+   * nondecreasing order, so the whole sequence is converted in a single
+   * pass over the tempo map.
+   */
+
+  private static final class Timebase
+  {
+    private final long[] tempos;
+    private final boolean isPPQ;
+    private final double resolution;
+    private final double ticksPerSecond;
+    private int tempoNext;
+    private long segmentTick;
+    private long segmentNanos;
+    private double nanosPerTick;
+
+    Timebase(
+      final Sequence sequence,
+      final long[] inTempos)
+    {
+      this.tempos =
+        inTempos;
+      this.isPPQ =
+        sequence.getDivisionType() == Sequence.PPQ;
+      this.resolution =
+        sequence.getResolution();
+      this.ticksPerSecond =
+        sequence.getDivisionType() * this.resolution;
+
+      if (this.isPPQ) {
+        this.nanosPerTick = (TEMPO_DEFAULT * 1000.0) / this.resolution;
+      } else {
+        this.nanosPerTick = 1_000_000_000.0 / this.ticksPerSecond;
+      }
+    }
+
+    long nanosOf(
+      final long tick)
+    {
+      while (this.isPPQ && this.tempoNext < this.tempos.length) {
+        final var tempo = this.tempos[this.tempoNext];
+        final var tempoTick = tempo >>> 24;
+        if (tempoTick > tick) {
+          break;
+        }
+        this.segmentNanos = this.nanosAt(tempoTick);
+        this.segmentTick = tempoTick;
+        this.nanosPerTick = ((tempo & 0xFFFFFFL) * 1000.0) / this.resolution;
+        ++this.tempoNext;
+      }
+      return this.nanosAt(tick);
+    }
+
+    private long nanosAt(
+      final long tick)
+    {
+      return this.segmentNanos
+             + (long) ((tick - this.segmentTick) * this.nanosPerTick);
+    }
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.midi;
+
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeySubscriptionType;
+import com.io7m.ivoirax.core.IvPianoType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+
+/**
+ * A recorder that captures the key presses and releases of a piano as MIDI
+ * notes, and writes them as a Standard MIDI File.
+ *
+ * Each press or release is stored as a single packed {@code long} holding
+ * the tick time, the note, and whether the note starts or ends, appended
+ * to a growable primitive array. Tick times are derived from
+ * {@link System#nanoTime()} relative to the creation of the recorder,
+ * using the configured tempo and resolution. No MIDI objects are created
+ * while recording; a file is written by encoding the array directly as a
+ * single-track (format 0) Standard MIDI File in one streaming pass.
+ *
+ * Keys that map to notes outside of the MIDI range {@code [0, 127]} are
+ * ignored. All methods must be called on the FX application thread.
+ */
+
+public final class IvMidiFileRecorder implements AutoCloseable
+{
+  private static final int NOTE_COUNT = 128;
+
+  private final IvMidiFileRecorderConfiguration configuration;
+  private final IvKeySubscriptionType subscription;
+  private final double ticksPerNano;
+  private final long timeStart;
+  private final long[] held;
+  private long[] notes;
+  private int noteCount;
+  private long tickClosed;
+
+  private IvMidiFileRecorder(
+    final IvPianoType piano,
+    final IvMidiFileRecorderConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.ticksPerNano =
+      inConfiguration.resolution() / (inConfiguration.tempo() * 1000.0);
+    this.held =
+      new long[NOTE_COUNT >>> 6];
+    this.notes =
+      new long[256];
+    this.timeStart =
+      System.nanoTime();
+    this.tickClosed =
+      -1L;
+    this.subscription =
+      piano.addKeyEventListener(
+        new Listener(),
+        EnumSet.of(IvKeyEventKind.KEY_PRESSED, IvKeyEventKind.KEY_RELEASED)
+      );
+  }
+
+  /**
+   * Start recording the key presses and releases of the given piano.
+   *
+   * @param piano         The piano
+   * @param configuration The configuration
+   *
+   * @return A recorder
+   */
+
+  public static IvMidiFileRecorder create(
+    final IvPianoType piano,
+    final IvMidiFileRecorderConfiguration configuration)
+  {
+    Objects.requireNonNull(piano, "piano");
+    return new IvMidiFileRecorder(piano, configuration);
+  }
+
+  /**
+   * @return The recorder configuration
+   */
+
+  public IvMidiFileRecorderConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  /**
+   * @return The number of note starts and ends recorded so far
+   */
+
+  public int noteEventCount()
+  {
+    return this.noteCount;
+  }
+
+  /**
+   * Write everything recorded so far to the given file, replacing it if it
+   * exists. Recording continues afterwards. Notes that are still held are
+   * ended at the current time in the written file, or at the time the
+   * recorder was closed.
+   *
+   * @param file The output file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void write(
+    final Path file)
+    throws IOException
+  {
+    try (var output = new BufferedOutputStream(Files.newOutputStream(file))) {
+      this.write(output);
+    }
+  }
+
+  /**
+   * Write everything recorded so far to the given stream. The stream is
+   * not closed. Recording continues afterwards. Notes that are still held
+   * are ended at the current time in the written data, or at the time the
+   * recorder was closed.
+   *
+   * @param output The output stream
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void write(
+    final OutputStream output)
+    throws IOException
+  {
+    Objects.requireNonNull(output, "output");
+
+    final var tickEnd =
+      this.tickClosed >= 0L ? this.tickClosed : this.tickNow();
+
+    /*
+     * The track length precedes the track data, so the track is encoded
+     * once into a stream that only counts bytes, and then again for real.
+     */
+
+    final var counter = new DataOutputStream(OutputStream.nullOutputStream());
+    this.writeTrack(counter, tickEnd);
+
+    final var data = new DataOutputStream(output);
+    data.writeInt(0x4D546864);
+    data.writeInt(6);
+    data.writeShort(0);
+    data.writeShort(1);
+    data.writeShort(this.configuration.resolution());
+    data.writeInt(0x4D54726B);
+    data.writeInt(counter.size());
+    this.writeTrack(data, tickEnd);
+    data.flush();
+  }
+
+  private void writeTrack(
+    final DataOutputStream data,
+    final long tickEnd)
+    throws IOException
+  {
+    final var tempo = this.configuration.tempo();
+    writeVariable(data, 0L);
+    data.writeByte(0xFF);
+    data.writeByte(0x51);
+    data.writeByte(3);
+    data.writeByte(tempo >>> 16);
+    data.writeByte(tempo >>> 8);
+    data.writeByte(tempo);
+
+    /*
+     * Every note event is a NOTE_ON on the same channel (note ends have a
+     * velocity of zero), so running status applies to everything after the
+     * first event.
+     */
+
+    final var status = 0x90 | this.configuration.channel();
+    final var velocity = this.configuration.velocity();
+    var tickPrevious = 0L;
+    var statusWritten = false;
+
+    for (int index = 0; index < this.noteCount; ++index) {
+      final var note = this.notes[index];
+      final var tick = note >>> 8;
+      writeVariable(data, tick - tickPrevious);
+      tickPrevious = tick;
+      if (!statusWritten) {
+        data.writeByte(status);
+        statusWritten = true;
+      }
+      data.writeByte((int) (note & 0x7FL));
+      data.writeByte((note & 0x80L) != 0L ? velocity : 0);
+    }
+
+    for (int number = 0; number < NOTE_COUNT; ++number) {
+      if ((this.held[number >>> 6] & (1L << number)) != 0L) {
+        writeVariable(data, tickEnd - tickPrevious);
+        tickPrevious = tickEnd;
+        if (!statusWritten) {
+          data.writeByte(status);
+          statusWritten = true;
+        }
+        data.writeByte(number);
+        data.writeByte(0);
+      }
+    }
+
+    writeVariable(data, Math.max(0L, tickEnd - tickPrevious));
+    data.writeByte(0xFF);
+    data.writeByte(0x2F);
+    data.writeByte(0);
+  }
+
+  private static void writeVariable(
+    final DataOutputStream data,
+    final long value)
+    throws IOException
+  {
+    var shift = 56;
+    while (shift > 0 && (value >>> shift) == 0L) {
+      shift -= 7;
+    }
+    while (shift > 0) {
+      data.writeByte((int) (((value >>> shift) & 0x7FL) | 0x80L));
+      shift -= 7;
+    }
+    data.writeByte((int) (value & 0x7FL));
+  }
+
+  private long tickNow()
+  {
+    return (long) ((System.nanoTime() - this.timeStart) * this.ticksPerNano);
+  }
+
+  private void record(
+    final int index,
+    final boolean isOn)
+  {
+    final var number = index + this.configuration.noteOffset();
+    if (number < 0 || number >= NOTE_COUNT) {
+      return;
+    }
+
+    final var bit = 1L << number;
+    if (isOn) {
+      this.held[number >>> 6] |= bit;
+    } else {
+      this.held[number >>> 6] &= ~bit;
+    }
+
+    if (this.noteCount == this.notes.length) {
+      this.notes = Arrays.copyOf(this.notes, this.notes.length << 1);
+    }
+    this.notes[this.noteCount] =
+      (this.tickNow() << 8) | (isOn ? 0x80L : 0L) | number;
+    ++this.noteCount;
+  }
+
+  /**
+   * Stop recording. Everything recorded so far can still be written.
+   */
+
+  @Override
+  public void close()
+  {
+    if (this.tickClosed < 0L) {
+      this.tickClosed = this.tickNow();
+    }
+    this.subscription.close();
+  }
+
+  private final class Listener
+    implements IvKeyEventListenerType
+  {
+    Listener()
+    {
+
+    }
+
+    @Override
+    public void onPress(
+      final int index,
+      final boolean isSynthesized)
+    {
+      IvMidiFileRecorder.this.record(index, true);
+    }
+
+    @Override
+    public void onRelease(
+      final int index,
+      final boolean isSynthesized)
+    {
+      IvMidiFileRecorder.this.record(index, false);
+    }
+  }
+}
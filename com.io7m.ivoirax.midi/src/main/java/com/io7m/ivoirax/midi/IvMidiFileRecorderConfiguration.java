@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.midi;
+
+/**
+ * The configuration of an {@link IvMidiFileRecorder}.
+ *
+ * @param channel    The MIDI channel on which notes are recorded
+ *                   ({@code [0, 15]})
+ * @param velocity   The velocity of recorded notes ({@code [1, 127]})
+ * @param noteOffset The MIDI note that corresponds to key index 0
+ * @param tempo      The tempo in microseconds per quarter note
+ *                   ({@code [1, 0xFFFFFF]})
+ * @param resolution The number of ticks per quarter note
+ *                   ({@code [1, 0x7FFF]})
+ */
+
+public record IvMidiFileRecorderConfiguration(
+  int channel,
+  int velocity,
+  int noteOffset,
+  int tempo,
+  int resolution)
+{
+  /**
+   * The configuration of an {@link IvMidiFileRecorder}.
+   *
+   * @param channel    The MIDI channel on which notes are recorded
+   *                   ({@code [0, 15]})
+   * @param velocity   The velocity of recorded notes ({@code [1, 127]})
+   * @param noteOffset The MIDI note that corresponds to key index 0
+   * @param tempo      The tempo in microseconds per quarter note
+   *                   ({@code [1, 0xFFFFFF]})
+   * @param resolution The number of ticks per quarter note
+   *                   ({@code [1, 0x7FFF]})
+   */
+
+  public IvMidiFileRecorderConfiguration
+  {
+    if (channel < 0 || channel > 15) {
+      throw new IllegalArgumentException(
+        "Channel must be in the range [0, 15].");
+    }
+    if (velocity < 1 || velocity > 127) {
+      throw new IllegalArgumentException(
+        "Velocity must be in the range [1, 127].");
+    }
+    if (tempo < 1 || tempo > 0xFFFFFF) {
+      throw new IllegalArgumentException(
+        "Tempo must be in the range [1, 0xFFFFFF].");
+    }
+    if (resolution < 1 || resolution > 0x7FFF) {
+      throw new IllegalArgumentException(
+        "Resolution must be in the range [1, 0x7FFF].");
+    }
+  }
+
+  /**
+   * @return A configuration that records notes on channel 0 with velocity
+   * 100 at 120 BPM with 480 ticks per quarter note, and maps key index
+   * {@code n} to MIDI note {@code n}
+   */
+
+  public static IvMidiFileRecorderConfiguration defaults()
+  {
+    return new IvMidiFileRecorderConfiguration(0, 100, 0, 500_000, 480);
+  }
+}
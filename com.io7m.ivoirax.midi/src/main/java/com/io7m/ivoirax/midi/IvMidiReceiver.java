@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.midi;
+
+import com.io7m.ivoirax.core.IvPianoType;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A MIDI receiver that presses and releases piano keys in response to
+ * note messages.
+ *
+ * A {@code NOTE_ON} message with a nonzero velocity presses the key at
+ * index {@code note - noteOffset}, and a {@code NOTE_OFF} message, or a
+ * {@code NOTE_ON} message with a velocity of zero, releases it. Messages on
+ * all channels are accepted, and the receiver tracks which channels hold
+ * each note: a key is pressed when the first channel starts its note, and
+ * released only when the last channel holding the note releases it. A
+ * repeated {@code NOTE_ON} on a channel that already holds the note has no
+ * effect. Notes that fall outside of the keyboard, and all other messages,
+ * are ignored.
+ *
+ * Messages are decoded from the status and data bytes of
+ * {@link ShortMessage} without allocating, and the resulting key changes
+ * are submitted via {@link IvPianoType#keyPressLater(int)} and
+ * {@link IvPianoType#keyReleaseLater(int)}, so the thread delivering MIDI
+ * messages never blocks on the FX application thread, and the piano is
+ * updated at most once per pulse regardless of the incoming message rate.
+ */
+
+public final class IvMidiReceiver implements Receiver
+{
+  private static final int NOTE_COUNT = 128;
+
+  private final IvPianoType piano;
+  private final int noteOffset;
+  private final AtomicIntegerArray channelsHolding;
+  private volatile boolean closed;
+
+  /**
+   * A MIDI receiver that maps MIDI note {@code n} to key index {@code n}.
+   *
+   * @param inPiano The piano
+   */
+
+  public IvMidiReceiver(
+    final IvPianoType inPiano)
+  {
+    this(inPiano, 0);
+  }
+
+  /**
+   * A MIDI receiver that maps MIDI note {@code n} to key index
+   * {@code n - inNoteOffset}. The pianos always draw key index 0 as a C,
+   * and so the offset must be the MIDI note of a C (a multiple of 12). For
+   * example, an offset of {@code 24} maps C1 to index {@code 0}, and an
+   * offset of {@code 12} maps C0 to index {@code 0}.
+   *
+   * @param inPiano      The piano
+   * @param inNoteOffset The MIDI note that corresponds to key index 0
+   *
+   * @throws IllegalArgumentException If the offset is not a multiple of 12
+   */
+
+  public IvMidiReceiver(
+    final IvPianoType inPiano,
+    final int inNoteOffset)
+    throws IllegalArgumentException
+  {
+    if (Math.floorMod(inNoteOffset, 12) != 0) {
+      throw new IllegalArgumentException(
+        "Note offset must be a multiple of 12 (a C): %d"
+          .formatted(Integer.valueOf(inNoteOffset))
+      );
+    }
+
+    this.piano =
+      Objects.requireNonNull(inPiano, "piano");
+    this.noteOffset =
+      inNoteOffset;
+    this.channelsHolding =
+      new AtomicIntegerArray(NOTE_COUNT);
+  }
+
+  /**
+   * @return The MIDI note that corresponds to key index 0
+   */
+
+  public int noteOffset()
+  {
+    return this.noteOffset;
+  }
+
+  @Override
+  public void send(
+    final MidiMessage message,
+    final long timeStamp)
+  {
+    if (this.closed) {
+      return;
+    }
+    if (!(message instanceof final ShortMessage shortMessage)) {
+      return;
+    }
+
+    final var note = shortMessage.getData1();
+    final var channel = shortMessage.getChannel();
+    switch (shortMessage.getCommand()) {
+      case ShortMessage.NOTE_ON -> {
+        if (shortMessage.getData2() == 0) {
+          this.noteOff(channel, note);
+        } else {
+          this.noteOn(channel, note);
+        }
+      }
+      case ShortMessage.NOTE_OFF -> {
+        this.noteOff(channel, note);
+      }
+      default -> {
+
+      }
+    }
+  }
+
+  private void noteOn(
+    final int channel,
+    final int note)
+  {
+    final var bit = 1 << channel;
+    while (true) {
+      final var held = this.channelsHolding.get(note);
+      if ((held & bit) != 0) {
+        return;
+      }
+      if (this.channelsHolding.compareAndSet(note, held, held | bit)) {
+        if (held == 0) {
+          this.piano.keyPressLater(note - this.noteOffset);
+        }
+        return;
+      }
+    }
+  }
+
+  private void noteOff(
+    final int channel,
+    final int note)
+  {
+    final var bit = 1 << channel;
+    while (true) {
+      final var held = this.channelsHolding.get(note);
+      if ((held & bit) == 0) {
+        return;
+      }
+      final var heldNext = held & ~bit;
+      if (this.channelsHolding.compareAndSet(note, held, heldNext)) {
+        if (heldNext == 0) {
+          this.piano.keyReleaseLater(note - this.noteOffset);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Close the receiver. Messages received after closing are ignored. Keys
+   * that are currently pressed remain pressed.
+   */
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.midi;
+
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeySubscriptionType;
+import com.io7m.ivoirax.core.IvPianoType;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+import java.util.EnumSet;
+import java.util.Objects;
+
+/**
+ * A MIDI transmitter that sends note messages in response to key presses
+ * and releases on a piano.
+ *
+ * Pressing the key at index {@code i} sends a {@code NOTE_ON} message for
+ * note {@code i + noteOffset}, and releasing it sends the matching
+ * {@code NOTE_OFF} message. Keys that map to notes outside of the MIDI
+ * range {@code [0, 127]} are ignored.
+ *
+ * The transmitter subscribes to the piano with a primitive
+ * {@link IvKeyEventListenerType}, and messages are sent synchronously on
+ * the FX application thread from within the piano's own event delivery,
+ * so the receiver sees a message before the input event that pressed the
+ * key has finished being handled. A single {@link ShortMessage} instance
+ * is reused for every message, and so nothing is allocated per event.
+ * Receivers that retain messages beyond the call to
+ * {@link Receiver#send(javax.sound.midi.MidiMessage, long)} must
+ * {@link ShortMessage#clone() clone} them.
+ */
+
+public final class IvMidiTransmitter implements Transmitter
+{
+  private final IvMidiTransmitterConfiguration configuration;
+  private final ShortMessage message;
+  private final IvKeySubscriptionType subscription;
+  private volatile Receiver receiver;
+
+  private IvMidiTransmitter(
+    final IvPianoType inPiano,
+    final IvMidiTransmitterConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.message =
+      new ShortMessage();
+    this.subscription =
+      inPiano.addKeyEventListener(
+        new KeyListener(),
+        EnumSet.of(IvKeyEventKind.KEY_PRESSED, IvKeyEventKind.KEY_RELEASED)
+      );
+  }
+
+  /**
+   * Create a transmitter that sends messages for key events on the given
+   * piano. The transmitter initially has no receiver.
+   *
+   * @param piano         The piano
+   * @param configuration The configuration
+   *
+   * @return A transmitter
+   */
+
+  public static IvMidiTransmitter create(
+    final IvPianoType piano,
+    final IvMidiTransmitterConfiguration configuration)
+  {
+    Objects.requireNonNull(piano, "piano");
+    return new IvMidiTransmitter(piano, configuration);
+  }
+
+  /**
+   * @return The transmitter configuration
+   */
+
+  public IvMidiTransmitterConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  /**
+   * Set the receiver. This method may be called from any thread.
+   *
+   * @param newReceiver The receiver, or {@code null} to stop sending
+   */
+
+  @Override
+  public void setReceiver(
+    final Receiver newReceiver)
+  {
+    this.receiver = newReceiver;
+  }
+
+  @Override
+  public Receiver getReceiver()
+  {
+    return this.receiver;
+  }
+
+  /**
+   * Close the transmitter, unsubscribing it from the piano. This method may
+   * be called from any thread. Notes that are currently sounding at the
+   * receiver are not released.
+   */
+
+  @Override
+  public void close()
+  {
+    this.subscription.close();
+    this.receiver = null;
+  }
+
+  private void send(
+    final int command,
+    final int index,
+    final int velocity,
+    final boolean isSynthesized)
+  {
+    if (isSynthesized && this.configuration.skipSynthesized()) {
+      return;
+    }
+
+    final var target = this.receiver;
+    if (target == null) {
+      return;
+    }
+
+    final var note = index + this.configuration.noteOffset();
+    if (note < 0 || note > 127) {
+      return;
+    }
+
+    try {
+      this.message.setMessage(
+        command, this.configuration.channel(), note, velocity);
+    } catch (final InvalidMidiDataException e) {
+      throw new IllegalStateException(e);
+    }
+    target.send(this.message, -1L);
+  }
+
+  private final class KeyListener
+    implements IvKeyEventListenerType
+  {
+    KeyListener()
+    {
+
+    }
+
+    @Override
+    public void onPress(
+      final int index,
+      final boolean isSynthesized)
+    {
+      IvMidiTransmitter.this.send(
+        ShortMessage.NOTE_ON,
+        index,
+        IvMidiTransmitter.this.configuration.velocity(),
+        isSynthesized
+      );
+    }
+
+    @Override
+    public void onRelease(
+      final int index,
+      final boolean isSynthesized)
+    {
+      IvMidiTransmitter.this.send(
+        ShortMessage.NOTE_OFF,
+        index,
+        0,
+        isSynthesized
+      );
+    }
+  }
+}
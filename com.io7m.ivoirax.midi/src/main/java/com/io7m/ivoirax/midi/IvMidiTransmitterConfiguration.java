@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.midi;
+
+/**
+ * The configuration of an {@link IvMidiTransmitter}.
+ *
+ * @param channel         The MIDI channel on which notes are sent
+ *                        ({@code [0, 15]})
+ * @param velocity        The velocity of sent {@code NOTE_ON} messages
+ *                        ({@code [1, 127]})
+ * @param noteOffset      The MIDI note that corresponds to key index 0
+ * @param skipSynthesized {@code true} if presses and releases of keys that
+ *                        were pressed synthetically should not be sent
+ */
+
+public record IvMidiTransmitterConfiguration(
+  int channel,
+  int velocity,
+  int noteOffset,
+  boolean skipSynthesized)
+{
+  /**
+   * The configuration of an {@link IvMidiTransmitter}.
+   *
+   * @param channel         The MIDI channel on which notes are sent
+   *                        ({@code [0, 15]})
+   * @param velocity        The velocity of sent {@code NOTE_ON} messages
+   *                        ({@code [1, 127]})
+   * @param noteOffset      The MIDI note that corresponds to key index 0
+   * @param skipSynthesized {@code true} if presses and releases of keys that
+   *                        were pressed synthetically should not be sent
+   */
+
+  public IvMidiTransmitterConfiguration
+  {
+    if (channel < 0 || channel > 15) {
+      throw new IllegalArgumentException(
+        "Channel must be in the range [0, 15].");
+    }
+    if (velocity < 1 || velocity > 127) {
+      throw new IllegalArgumentException(
+        "Velocity must be in the range [1, 127].");
+    }
+  }
+
+  /**
+   * @return A configuration that sends notes on channel 0 with velocity
+   * 100, maps MIDI note {@code n} to key index {@code n}, and sends
+   * synthesized events
+   */
+
+  public static IvMidiTransmitterConfiguration defaults()
+  {
+    return new IvMidiTransmitterConfiguration(0, 100, 0, false);
+  }
+}
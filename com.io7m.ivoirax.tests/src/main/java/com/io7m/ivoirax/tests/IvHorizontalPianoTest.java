@@ -20,12 +20,15 @@ package com.io7m.ivoirax.tests;
 import com.io7m.ivoirax.core.IvHorizontalPiano;
 import com.io7m.ivoirax.core.IvKeyEnter;
 import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyMaterialization;
 import com.io7m.ivoirax.core.IvKeyPressed;
 import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.ivoirax.core.IvPianoTheme;
 import com.io7m.xoanon.commander.api.XCCommanderType;
 import com.io7m.xoanon.commander.api.XCRobotType;
 import com.io7m.xoanon.extension.XoExtension;
 import javafx.scene.Scene;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
 import org.junit.jupiter.api.BeforeEach;
@@ -35,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -230,6 +234,56 @@ public final class IvHorizontalPianoTest
     assertEquals(Color.gray(0.9), view.colorKeyNaturalOver());
   }
 
+  /**
+   * Applying a theme changes all colors at once, and doesn't affect the
+   * pressed state of keys.
+   *
+   * @param commander The commander
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoTheme(
+    final XCCommanderType commander)
+    throws Exception
+  {
+    final var theme =
+      new IvPianoTheme(
+        Color.RED,
+        Color.GREEN,
+        Color.BLUE,
+        Color.CYAN,
+        Color.MAGENTA,
+        Color.YELLOW,
+        Color.ORANGE,
+        Color.PINK,
+        Color.BROWN
+      );
+
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano(100);
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+      view.keyPress(0);
+      view.setTheme(theme);
+    });
+
+    final var view = pianoView.get();
+    assertEquals(theme, view.theme());
+    assertEquals(Color.RED, view.colorKeyNatural());
+    assertEquals(Color.GREEN, view.colorKeyNaturalOver());
+    assertEquals(Color.BLUE, view.colorKeyNaturalPressed());
+    assertEquals(Color.CYAN, view.colorKeyAccidental());
+    assertEquals(Color.MAGENTA, view.colorKeyAccidentalOver());
+    assertEquals(Color.YELLOW, view.colorKeyAccidentalPressed());
+    assertEquals(Color.ORANGE, view.colorStrokeKeyNatural());
+    assertEquals(Color.PINK, view.colorStrokeKeyAccidental());
+    assertEquals(Color.BROWN, view.colorKeyText());
+    assertTrue(view.keyIsPressed(0));
+  }
+
   /**
    * The piano has the expected number of keys.
    *
@@ -652,6 +706,88 @@ public final class IvHorizontalPianoTest
     this.eventIsBefore(kp1, kr1);
   }
 
+  /**
+   * Dragging the mouse from an accidental key down onto the natural key
+   * beneath it releases the accidental and presses the natural.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyDragAccidentalToNatural(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    /*
+     * Key 1 straddles naturals 0 and 2; the right quarter of key 1 lies
+     * above key 2.
+     */
+
+    final var x =
+      robot.evaluate(() -> {
+        return Double.valueOf(
+          piano.xPositionOf(1) + (piano.accidentalKeyWidth() * 0.75)
+        );
+      }).doubleValue();
+
+    robot.evaluate(() -> {
+      robot.robot().mouseMove(piano.localToScreen(x, 16.0));
+      return null;
+    });
+    robot.waitForFrames(60);
+
+    robot.evaluate(() -> {
+      robot.robot().mousePress(MouseButton.PRIMARY);
+      return null;
+    });
+    robot.waitForFrames(60);
+
+    robot.evaluate(() -> {
+      final var y = piano.naturalKeyHeight() - 4.0;
+      robot.robot().mouseMove(piano.localToScreen(x, y));
+      return null;
+    });
+    robot.waitForFrames(60);
+
+    robot.evaluate(() -> {
+      robot.robot().mouseRelease(MouseButton.PRIMARY);
+      return null;
+    });
+    robot.waitForFrames(60);
+
+    this.dumpEvents();
+    final var kp0 = new IvKeyPressed(0, false);
+    final var kp1 = new IvKeyPressed(1, false);
+    final var kp2 = new IvKeyPressed(2, false);
+    final var kr1 = new IvKeyReleased(1, false);
+    final var kr2 = new IvKeyReleased(2, false);
+
+    this.eventContains(kp1);
+    this.eventContains(kr1);
+    this.eventContains(kp2);
+    this.eventContains(kr2);
+    this.eventIsBefore(kp1, kr1);
+    this.eventIsBefore(kr1, kp2);
+    this.eventIsBefore(kp2, kr2);
+    assertFalse(this.events.contains(kp0));
+    assertFalse(piano.keyIsPressed(1));
+    assertFalse(piano.keyIsPressed(2));
+  }
+
   /**
    * Pressing a piano key works (synthetically).
    *
@@ -718,4 +854,134 @@ public final class IvHorizontalPianoTest
       assertTrue(e.isSynthesized());
     }
   }
+
+  /**
+   * Pressing and releasing keys in bulk publishes events only for the keys
+   * that changed, in ascending key order.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyPressBulk(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    robot.execute(() -> {
+      final var keys = new BitSet();
+      keys.set(130);
+      keys.set(3);
+      keys.set(70);
+      keys.set(1024);
+      piano.setPressedKeys(keys);
+    });
+    robot.execute(() -> {
+      piano.keyPressAll(new int[]{2, 3, -1, 1024});
+    });
+    assertTrue(piano.keyIsPressed(2));
+    assertTrue(piano.keyIsPressed(3));
+    assertTrue(piano.keyIsPressed(70));
+    assertTrue(piano.keyIsPressed(130));
+
+    robot.execute(() -> {
+      final var keys = new BitSet();
+      keys.set(2);
+      keys.set(70);
+      piano.setPressedKeys(keys);
+    });
+    assertFalse(piano.keyIsPressed(3));
+    assertFalse(piano.keyIsPressed(130));
+
+    robot.execute(() -> {
+      piano.keyReleaseAll(new int[]{70, 2});
+    });
+    assertFalse(piano.keyIsPressed(2));
+    assertFalse(piano.keyIsPressed(70));
+
+    this.dumpEvents();
+    assertEquals(
+      List.of(
+        new IvKeyPressed(3, true),
+        new IvKeyPressed(70, true),
+        new IvKeyPressed(130, true),
+        new IvKeyPressed(2, true),
+        new IvKeyReleased(3, true),
+        new IvKeyReleased(130, true),
+        new IvKeyReleased(2, true),
+        new IvKeyReleased(70, true)
+      ),
+      this.events.stream()
+        .filter(e -> e instanceof IvKeyPressed || e instanceof IvKeyReleased)
+        .toList()
+    );
+  }
+
+  /**
+   * Keys that do not currently have nodes behave as any other key.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMaterializeVisible(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view =
+        new IvHorizontalPiano(145, IvKeyMaterialization.MATERIALIZE_VISIBLE);
+      final var scroll = new ScrollPane(view);
+      scroll.setPrefViewportWidth(320.0);
+      scroll.setFitToHeight(true);
+      pianoView.set(view);
+      newStage.setScene(new Scene(scroll));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+    assertEquals(1962.0, piano.xPositionOf(140));
+
+    robot.execute(() -> {
+      piano.keyPress(140);
+    });
+    assertTrue(piano.keyIsPressed(140));
+    robot.execute(() -> {
+      piano.keyRelease(140);
+    });
+    assertFalse(piano.keyIsPressed(140));
+
+    clickKey(robot, piano, 7);
+
+    final var kp0 = new IvKeyPressed(140, true);
+    final var kr0 = new IvKeyReleased(140, true);
+    final var kp1 = new IvKeyPressed(7, false);
+    final var kr1 = new IvKeyReleased(7, false);
+
+    this.dumpEvents();
+    this.eventContains(kp0);
+    this.eventContains(kr0);
+    this.eventContains(kp1);
+    this.eventContains(kr1);
+    this.eventIsBefore(kp0, kr0);
+    this.eventIsBefore(kp1, kr1);
+  }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyEventBatcherTest
+{
+  /**
+   * Batch listeners receive all events in a pulse at once.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyEventBatches(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var batches = new ArrayList<List<IvKeyEventType>>();
+
+    piano.addKeyEventBatchListener(batch -> {
+      final var copy = new ArrayList<IvKeyEventType>(batch.size());
+      for (int index = 0; index < batch.size(); ++index) {
+        copy.add(batch.event(index));
+      }
+      batches.add(copy);
+    });
+
+    robot.execute(() -> {
+      piano.keyPress(3);
+      piano.keyPress(4);
+      piano.keyRelease(3);
+    });
+    robot.waitForFrames(10);
+
+    assertEquals(
+      List.of(
+        List.of(
+          new IvKeyPressed(3, true),
+          new IvKeyPressed(4, true),
+          new IvKeyReleased(3, true)
+        )
+      ),
+      batches.stream()
+        .map(b -> b.stream()
+          .filter(e -> e instanceof IvKeyPressed || e instanceof IvKeyReleased)
+          .toList())
+        .filter(b -> !b.isEmpty())
+        .toList()
+    );
+  }
+
+  /**
+   * A batch listener of a piano that is not in a scene may press keys
+   * during delivery; the resulting events are delivered exactly once, as a
+   * single following batch, rather than reentrantly.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyEventBatchesReentrant(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var batches = new ArrayList<List<IvKeyEventType>>();
+
+    robot.execute(() -> {
+      final var piano = new IvHorizontalPiano();
+      piano.addKeyEventBatchListener(batch -> {
+        final var copy = new ArrayList<IvKeyEventType>(batch.size());
+        for (int index = 0; index < batch.size(); ++index) {
+          copy.add(batch.event(index));
+        }
+        batches.add(copy);
+
+        if (copy.contains(new IvKeyPressed(3, true))) {
+          piano.keyPress(4);
+          piano.keyPress(5);
+        }
+      });
+      piano.keyPress(3);
+    });
+
+    assertEquals(
+      List.of(
+        List.of(new IvKeyPressed(3, true)),
+        List.of(new IvKeyPressed(4, true), new IvKeyPressed(5, true))
+      ),
+      batches
+    );
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.internal.IvKeyEventDispatcher;
+import net.jqwik.api.Arbitraries;
+import net.jqwik.api.Arbitrary;
+import net.jqwik.api.Combinators;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.Provide;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class IvKeyEventDispatcherTest
+{
+  private static final int KEY_COUNT = 4;
+
+  private enum OpKind
+  {
+    ENTER,
+    EXIT,
+    PRESS,
+    RELEASE
+  }
+
+  private record Op(
+    OpKind kind,
+    int index,
+    boolean isSynthesized)
+  {
+
+  }
+
+  /**
+   * A listener that checks the per-key ordering guarantees as events
+   * arrive.
+   */
+
+  private static final class Checker
+    implements IvKeyEventListenerType
+  {
+    private final boolean[] entered = new boolean[KEY_COUNT];
+    private final boolean[] pressed = new boolean[KEY_COUNT];
+    private final boolean[] synthesized = new boolean[KEY_COUNT];
+    private final List<String> events = new ArrayList<>();
+
+    Checker()
+    {
+
+    }
+
+    @Override
+    public void onEnter(
+      final int index)
+    {
+      assertFalse(this.entered[index], "Enter after Enter");
+      assertFalse(this.pressed[index], "Enter while pressed");
+      this.entered[index] = true;
+      this.events.add("Enter " + index);
+    }
+
+    @Override
+    public void onExit(
+      final int index)
+    {
+      assertTrue(this.entered[index], "Exit without Enter");
+      assertFalse(this.pressed[index], "Exit while pressed");
+      this.entered[index] = false;
+      this.events.add("Exit " + index);
+    }
+
+    @Override
+    public void onPress(
+      final int index,
+      final boolean isSynthesized)
+    {
+      assertFalse(this.pressed[index], "Pressed after Pressed");
+      this.pressed[index] = true;
+      this.synthesized[index] = isSynthesized;
+      this.events.add("Pressed " + index);
+    }
+
+    @Override
+    public void onRelease(
+      final int index,
+      final boolean isSynthesized)
+    {
+      assertTrue(this.pressed[index], "Released without Pressed");
+      assertEquals(this.synthesized[index], isSynthesized);
+      this.pressed[index] = false;
+      this.events.add("Released " + index);
+    }
+  }
+
+  @Provide
+  Arbitrary<List<Op>> operations()
+  {
+    final var op =
+      Combinators.combine(
+        Arbitraries.of(OpKind.class),
+        Arbitraries.integers().between(0, KEY_COUNT - 1),
+        Arbitraries.of(Boolean.TRUE, Boolean.FALSE)
+      ).as(Op::new);
+
+    return op.list().ofMaxSize(64);
+  }
+
+  private static void apply(
+    final IvKeyEventDispatcher dispatcher,
+    final Op op)
+  {
+    switch (op.kind) {
+      case ENTER -> dispatcher.enter(op.index);
+      case EXIT -> dispatcher.exit(op.index);
+      case PRESS -> dispatcher.press(op.index, op.isSynthesized);
+      case RELEASE -> dispatcher.release(op.index);
+    }
+  }
+
+  /**
+   * For any interleaving of hover and press signals across keys, the
+   * published events for each key are well-formed: Enter and Exit
+   * alternate, Pressed and Released alternate, and no hover events are
+   * published whilst a key is pressed.
+   *
+   * @param ops The operations
+   */
+
+  @Property
+  public void testOrdering(
+    @ForAll("operations") final List<Op> ops)
+  {
+    final var dispatcher = new IvKeyEventDispatcher(KEY_COUNT);
+    final var checker = new Checker();
+    dispatcher.setListener(checker);
+
+    for (final var op : ops) {
+      apply(dispatcher, op);
+    }
+  }
+
+  /**
+   * For any interleaving of signals, no legitimate state change is
+   * dropped: the published pressed state always matches the last press or
+   * release signal, and whenever a key is not pressed, the published hover
+   * state matches the last hover signal.
+   *
+   * @param ops The operations
+   */
+
+  @Property
+  public void testNothingLost(
+    @ForAll("operations") final List<Op> ops)
+  {
+    final var dispatcher = new IvKeyEventDispatcher(KEY_COUNT);
+    final var checker = new Checker();
+    dispatcher.setListener(checker);
+
+    final var over = new boolean[KEY_COUNT];
+    final var pressed = new boolean[KEY_COUNT];
+
+    for (final var op : ops) {
+      apply(dispatcher, op);
+      switch (op.kind) {
+        case ENTER -> over[op.index] = true;
+        case EXIT -> over[op.index] = false;
+        case PRESS -> pressed[op.index] = true;
+        case RELEASE -> pressed[op.index] = false;
+      }
+
+      for (int index = 0; index < KEY_COUNT; ++index) {
+        assertEquals(pressed[index], checker.pressed[index]);
+        if (!pressed[index]) {
+          assertEquals(over[index], checker.entered[index]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Leaving a key whilst it is pressed defers the exit until the release.
+   */
+
+  @Example
+  public void testExitDeferred()
+  {
+    final var dispatcher = new IvKeyEventDispatcher(KEY_COUNT);
+    final var checker = new Checker();
+    dispatcher.setListener(checker);
+
+    dispatcher.enter(1);
+    dispatcher.press(1, true);
+    dispatcher.exit(1);
+    dispatcher.enter(2);
+    dispatcher.release(1);
+
+    assertEquals(
+      List.of("Enter 1", "Pressed 1", "Enter 2", "Released 1", "Exit 1"),
+      checker.events
+    );
+  }
+
+  /**
+   * Repeated presses on different keys are not mistaken for duplicates.
+   */
+
+  @Example
+  public void testInterleavedRepeats()
+  {
+    final var dispatcher = new IvKeyEventDispatcher(KEY_COUNT);
+    final var checker = new Checker();
+    dispatcher.setListener(checker);
+
+    dispatcher.press(1, true);
+    dispatcher.press(2, true);
+    dispatcher.press(1, true);
+    dispatcher.release(1);
+    dispatcher.release(2);
+    dispatcher.press(1, true);
+
+    assertEquals(
+      List.of(
+        "Pressed 1",
+        "Pressed 2",
+        "Released 1",
+        "Released 2",
+        "Pressed 1"),
+      checker.events
+    );
+  }
+
+  /**
+   * Listeners only receive the event kinds they asked for, and kinds that
+   * nobody asked for are not dispatched at all.
+   */
+
+  @Example
+  public void testMask()
+  {
+    final var dispatcher = new IvKeyEventDispatcher(KEY_COUNT);
+    final var checker = new Checker();
+
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_PRESSED));
+
+    final var subscription =
+      dispatcher.subscribe(
+        checker,
+        checker,
+        IvKeyEventDispatcher.maskOf(
+          EnumSet.of(IvKeyEventKind.KEY_PRESSED, IvKeyEventKind.KEY_RELEASED))
+      );
+
+    assertTrue(dispatcher.isInterestedIn(IvKeyEventKind.KEY_PRESSED));
+    assertTrue(dispatcher.isInterestedIn(IvKeyEventKind.KEY_RELEASED));
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_ENTER));
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_EXIT));
+
+    dispatcher.enter(1);
+    dispatcher.press(1, false);
+    dispatcher.release(1);
+    dispatcher.exit(1);
+
+    assertEquals(List.of("Pressed 1", "Released 1"), checker.events);
+
+    subscription.close();
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_PRESSED));
+  }
+
+  /**
+   * The primary listener's mask contributes to the dispatcher's interest,
+   * and replacing the listener replaces its mask.
+   */
+
+  @Example
+  public void testListenerMask()
+  {
+    final var dispatcher = new IvKeyEventDispatcher(KEY_COUNT);
+    final var checker = new Checker();
+
+    dispatcher.setListener(
+      checker,
+      IvKeyEventDispatcher.maskOf(
+        EnumSet.of(IvKeyEventKind.KEY_PRESSED, IvKeyEventKind.KEY_RELEASED))
+    );
+
+    assertTrue(dispatcher.isInterestedIn(IvKeyEventKind.KEY_PRESSED));
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_ENTER));
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_EXIT));
+
+    dispatcher.enter(1);
+    dispatcher.press(1, false);
+    dispatcher.release(1);
+    dispatcher.exit(1);
+
+    assertEquals(List.of("Pressed 1", "Released 1"), checker.events);
+
+    dispatcher.setListener(checker);
+    assertTrue(dispatcher.isInterestedIn(IvKeyEventKind.KEY_ENTER));
+
+    dispatcher.setListener(checker, 0);
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_ENTER));
+    assertFalse(dispatcher.isInterestedIn(IvKeyEventKind.KEY_PRESSED));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyEventExecutorAdapterTest
+{
+  /**
+   * Handlers can be run on executors, and events for each key arrive in
+   * order.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyHandlerExecutor(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var received =
+      Collections.synchronizedList(new ArrayList<IvKeyEventType>());
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      piano.setOnKeyEventHandler(received::add, executor);
+
+      robot.execute(() -> {
+        for (int index = 0; index < 10; ++index) {
+          piano.keyPress(3);
+          piano.keyPress(4);
+          piano.keyRelease(3);
+          piano.keyRelease(4);
+        }
+      });
+    }
+
+    final var kp3 = new IvKeyPressed(3, true);
+    final var kr3 = new IvKeyReleased(3, true);
+    final var key3 =
+      received.stream()
+        .filter(e -> Objects.equals(e, kp3) || Objects.equals(e, kr3))
+        .toList();
+
+    assertEquals(20, key3.size());
+    for (int index = 0; index < key3.size(); index += 2) {
+      assertEquals(kp3, key3.get(index));
+      assertEquals(kr3, key3.get(index + 1));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventListenerType;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyEventListenerTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyEventListenerTest.class);
+
+  private List<IvKeyEventType> events;
+
+  private void dumpEvents()
+  {
+    this.events.forEach(event -> LOG.debug("Event: {}", event));
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.events = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  /**
+   * Primitive listeners receive the same events as handlers.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyListener(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventListener(new IvKeyEventListenerType()
+    {
+      @Override
+      public void onPress(
+        final int index,
+        final boolean isSynthesized)
+      {
+        IvKeyEventListenerTest.this.events.add(
+          new IvKeyPressed(index, isSynthesized));
+      }
+
+      @Override
+      public void onRelease(
+        final int index,
+        final boolean isSynthesized)
+      {
+        IvKeyEventListenerTest.this.events.add(
+          new IvKeyReleased(index, isSynthesized));
+      }
+    });
+
+    robot.execute(() -> {
+      piano.keyPress(3);
+      piano.keyPress(3);
+      piano.keyRelease(3);
+    });
+
+    this.dumpEvents();
+    assertEquals(
+      List.of(
+        new IvKeyPressed(3, true),
+        new IvKeyReleased(3, true)
+      ),
+      this.events
+    );
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvKeyEventLogReader;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class IvKeyEventLogReaderTest
+{
+  private static Path writeHeader(
+    final Path directory,
+    final int magic,
+    final int version,
+    final int segmentSize)
+    throws IOException
+  {
+    final var file = directory.resolve("log.bin");
+    try (var output = new DataOutputStream(Files.newOutputStream(file))) {
+      output.writeInt(magic);
+      output.writeInt(version);
+      output.writeInt(segmentSize);
+      output.writeLong(0L);
+      output.writeByte(0);
+    }
+    return file;
+  }
+
+  /**
+   * Files with the wrong magic number are rejected.
+   *
+   * @param directory A temporary directory
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBadMagic(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var file = writeHeader(directory, 0x12345678, 1, 1024);
+    assertThrows(IOException.class, () -> IvKeyEventLogReader.open(file));
+  }
+
+  /**
+   * Files with an unsupported version are rejected.
+   *
+   * @param directory A temporary directory
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBadVersion(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var file = writeHeader(directory, 0x49564B4C, 1000, 1024);
+    assertThrows(IOException.class, () -> IvKeyEventLogReader.open(file));
+  }
+
+  /**
+   * Files with a segment size that cannot hold the header are rejected
+   * with an I/O exception rather than failing later with an arithmetic
+   * error.
+   *
+   * @param directory A temporary directory
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBadSegmentSize(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    for (final var size : new int[]{-1, 0, 20}) {
+      final var file = writeHeader(directory, 0x49564B4C, 1, size);
+      assertThrows(IOException.class, () -> IvKeyEventLogReader.open(file));
+    }
+  }
+
+  /**
+   * Data beyond the length recorded in the header is ignored.
+   *
+   * @param directory A temporary directory
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testLengthRespected(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var file = directory.resolve("log.bin");
+    try (var output = new DataOutputStream(Files.newOutputStream(file))) {
+      output.writeInt(0x49564B4C);
+      output.writeInt(1);
+      output.writeInt(1024);
+      output.writeLong(22L);
+      output.writeByte((1 << 3) + 2 + 1);
+      output.writeByte(5);
+      output.writeByte(0xFF);
+      output.writeByte(0xFF);
+    }
+
+    try (var reader = IvKeyEventLogReader.open(file)) {
+      final var events = reader.readAll();
+      assertEquals(1, events.size());
+      assertEquals(5L, events.get(0).timeNanos());
+      assertEquals(new IvKeyPressed(1, false), events.get(0).event());
+    }
+  }
+
+  /**
+   * Empty files are rejected.
+   *
+   * @param directory A temporary directory
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testEmpty(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var file = Files.createFile(directory.resolve("empty.bin"));
+    assertThrows(IOException.class, () -> IvKeyEventLogReader.open(file));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvKeyEnter;
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventPacking;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class IvKeyEventPackingTest
+{
+  /**
+   * Packed events round trip.
+   */
+
+  @Test
+  public void testRoundTrip()
+  {
+    final var time = System.nanoTime();
+    for (final var kind : IvKeyEventKind.values()) {
+      for (final var index : new int[]{0, 1, 144, 65535}) {
+        for (final var synth : new boolean[]{false, true}) {
+          final var p = IvKeyEventPacking.pack(kind, index, synth, time);
+          assertEquals(kind, IvKeyEventPacking.kind(p));
+          assertEquals(index, IvKeyEventPacking.index(p));
+          assertEquals(synth, IvKeyEventPacking.isSynthesized(p));
+          assertEquals(
+            time & ((1L << IvKeyEventPacking.TIMESTAMP_BITS) - 1L),
+            IvKeyEventPacking.timestamp(p)
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * Packed events can be converted to event values.
+   */
+
+  @Test
+  public void testUnpack()
+  {
+    assertEquals(
+      new IvKeyPressed(23, true),
+      IvKeyEventPacking.unpack(
+        IvKeyEventPacking.pack(IvKeyEventKind.KEY_PRESSED, 23, true, 0L))
+    );
+    assertEquals(
+      new IvKeyReleased(23, false),
+      IvKeyEventPacking.unpack(
+        IvKeyEventPacking.pack(IvKeyEventKind.KEY_RELEASED, 23, false, 0L))
+    );
+    assertEquals(
+      new IvKeyEnter(7),
+      IvKeyEventPacking.unpack(
+        IvKeyEventPacking.pack(IvKeyEventKind.KEY_ENTER, 7, false, 0L))
+    );
+    assertFalse(IvKeyEventPacking.isSynthesized(
+      IvKeyEventPacking.pack(IvKeyEventKind.KEY_ENTER, 7, false, -1L)));
+    assertTrue(IvKeyEventPacking.timestamp(
+      IvKeyEventPacking.pack(IvKeyEventKind.KEY_ENTER, 7, false, -1L)) > 0L);
+  }
+}
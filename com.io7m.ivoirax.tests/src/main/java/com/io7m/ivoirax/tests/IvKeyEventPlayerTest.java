@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEnter;
+import com.io7m.ivoirax.core.IvKeyEventKind;
+import com.io7m.ivoirax.core.IvKeyEventPlayer;
+import com.io7m.ivoirax.core.IvKeyEventTimed;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyEventPlayerTest
+{
+  private List<IvKeyEventType> events;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.events = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  /**
+   * Recorded events can be replayed.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyEventPlayer(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.addKeyEventHandler(
+      this.events::add,
+      EnumSet.of(IvKeyEventKind.KEY_PRESSED, IvKeyEventKind.KEY_RELEASED)
+    );
+
+    final var timed = new ArrayList<IvKeyEventTimed>();
+    for (int index = 0; index < 20; ++index) {
+      timed.add(new IvKeyEventTimed(index * 2L, new IvKeyPressed(index, false)));
+      timed.add(new IvKeyEventTimed(index * 2L + 1L, new IvKeyEnter(index)));
+      timed.add(new IvKeyEventTimed(index * 2L + 1L, new IvKeyReleased(index, false)));
+    }
+
+    final var player =
+      IvKeyEventPlayer.createUnlimited(piano, timed, 4);
+    final var statistics =
+      player.start()
+        .get(10L, TimeUnit.SECONDS);
+
+    assertThrows(IllegalStateException.class, player::start);
+    assertEquals(40L, statistics.eventsApplied());
+    assertTrue(statistics.frames() >= 10L);
+    assertEquals(40, this.events.size());
+    assertEquals(new IvKeyPressed(0, true), this.events.get(0));
+    assertEquals(new IvKeyReleased(19, true), this.events.get(39));
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventOverflowPolicy;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyEventPublisherTest
+{
+  /**
+   * Publishers respect demand, and fail on overflow if configured to do so.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyEventPublisherOverflow(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var received = new ArrayList<IvKeyEventType>();
+    final var errors = new ArrayList<Throwable>();
+
+    piano.keyEventPublisher(IvKeyEventOverflowPolicy.FAIL, 2)
+      .subscribe(new Flow.Subscriber<>()
+      {
+        @Override
+        public void onSubscribe(
+          final Flow.Subscription subscription)
+        {
+          subscription.request(1L);
+        }
+
+        @Override
+        public void onNext(
+          final IvKeyEventType item)
+        {
+          received.add(item);
+        }
+
+        @Override
+        public void onError(
+          final Throwable throwable)
+        {
+          errors.add(throwable);
+        }
+
+        @Override
+        public void onComplete()
+        {
+
+        }
+      });
+
+    robot.execute(() -> {
+      piano.keyPress(1);
+      piano.keyPress(2);
+      piano.keyPress(3);
+    });
+    assertEquals(List.of(new IvKeyPressed(1, true)), received);
+    assertEquals(List.of(), errors);
+
+    robot.execute(() -> {
+      piano.keyPress(4);
+    });
+    assertEquals(1, errors.size());
+    assertInstanceOf(IllegalStateException.class, errors.get(0));
+  }
+
+  /**
+   * Under DROP_HOVER, a full buffer of presses discards the newest press
+   * rather than any pending one, and the subscription never fails.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyEventPublisherDropHover(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var received = new ArrayList<IvKeyEventType>();
+    final var errors = new ArrayList<Throwable>();
+    final var subscriptionRef = new AtomicReference<Flow.Subscription>();
+
+    piano.keyEventPublisher(IvKeyEventOverflowPolicy.DROP_HOVER, 2)
+      .subscribe(new Flow.Subscriber<>()
+      {
+        @Override
+        public void onSubscribe(
+          final Flow.Subscription subscription)
+        {
+          subscriptionRef.set(subscription);
+          subscription.request(1L);
+        }
+
+        @Override
+        public void onNext(
+          final IvKeyEventType item)
+        {
+          received.add(item);
+        }
+
+        @Override
+        public void onError(
+          final Throwable throwable)
+        {
+          errors.add(throwable);
+        }
+
+        @Override
+        public void onComplete()
+        {
+
+        }
+      });
+
+    robot.execute(() -> {
+      piano.keyPress(1);
+      piano.keyPress(2);
+      piano.keyPress(3);
+      piano.keyPress(4);
+    });
+    assertEquals(List.of(new IvKeyPressed(1, true)), received);
+
+    robot.execute(() -> {
+      subscriptionRef.get().request(10L);
+    });
+
+    assertEquals(
+      List.of(
+        new IvKeyPressed(1, true),
+        new IvKeyPressed(2, true),
+        new IvKeyPressed(3, true)
+      ),
+      received
+    );
+    assertEquals(List.of(), errors);
+  }
+}
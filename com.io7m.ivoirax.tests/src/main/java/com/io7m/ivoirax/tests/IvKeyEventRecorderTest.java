@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventLogReader;
+import com.io7m.ivoirax.core.IvKeyEventRecorder;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyEventRecorderTest
+{
+  /**
+   * Events can be recorded and read back.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyEventRecorder(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var file = Files.createTempFile("ivoirax-", ".log");
+    final var recorder = IvKeyEventRecorder.create(piano, file, 64);
+
+    /*
+     * Events are spread over several frames so that the mapper thread has
+     * time to map each of the tiny segments ahead of use.
+     */
+
+    for (int index = 0; index < 20; ++index) {
+      final var key = index;
+      robot.execute(() -> {
+        piano.keyPress(key);
+        piano.keyRelease(key);
+      });
+      robot.waitForFrames(2);
+    }
+    robot.execute(() -> {
+      try {
+        recorder.close();
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    assertEquals(0L, recorder.eventsDropped());
+
+    final var received = new ArrayList<IvKeyEventType>();
+    try (var reader = IvKeyEventLogReader.open(file)) {
+      while (true) {
+        final var next = reader.read();
+        if (next.isEmpty()) {
+          break;
+        }
+        final var event = next.get().event();
+        if (event instanceof IvKeyPressed || event instanceof IvKeyReleased) {
+          received.add(event);
+        }
+      }
+    }
+
+    assertEquals(40, received.size());
+    for (int index = 0; index < 20; ++index) {
+      assertEquals(new IvKeyPressed(index, true), received.get(index * 2));
+      assertEquals(new IvKeyReleased(index, true), received.get(index * 2 + 1));
+    }
+  }
+}
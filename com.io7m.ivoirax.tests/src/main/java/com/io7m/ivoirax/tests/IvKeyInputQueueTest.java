@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(XoExtension.class)
+public final class IvKeyInputQueueTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvKeyInputQueueTest.class);
+
+  private List<IvKeyEventType> events;
+
+  private void eventContains(
+    final IvKeyEventType e)
+  {
+    assertTrue(
+      this.events.contains(e),
+      "Events must contain %s".formatted(e)
+    );
+  }
+
+  private void eventIsBefore(
+    final IvKeyEventType e0,
+    final IvKeyEventType e1)
+  {
+    assertTrue(
+      this.events.indexOf(e0) < this.events.indexOf(e1),
+      "Event %s must be before event %s".formatted(e0, e1)
+    );
+  }
+
+  private void dumpEvents()
+  {
+    this.events.forEach(event -> LOG.debug("Event: {}", event));
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.events = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  /**
+   * Keys can be pressed and released from threads other than the FX thread,
+   * and a press and release within a single pulse is still visible.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyPressLater(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    final var thread = new Thread(() -> {
+      piano.keyPressLater(5);
+      piano.keyReleaseLater(5);
+      piano.keyPressLater(7);
+      piano.keyPressLater(-1);
+      piano.keyPressLater(1024);
+    });
+    thread.start();
+    thread.join();
+    robot.waitForFrames(60);
+
+    assertFalse(piano.keyIsPressed(5));
+    assertTrue(piano.keyIsPressed(7));
+
+    final var kp5 = new IvKeyPressed(5, true);
+    final var kr5 = new IvKeyReleased(5, true);
+    final var kp7 = new IvKeyPressed(7, true);
+
+    this.dumpEvents();
+    this.eventContains(kp5);
+    this.eventContains(kr5);
+    this.eventContains(kp7);
+    this.eventIsBefore(kp5, kr5);
+  }
+
+  /**
+   * Presses and releases of one key that arrive faster than the frame rate
+   * are coalesced, and the queue never falls behind.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyPressLaterCoalesced(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    final var thread = new Thread(() -> {
+      for (int index = 0; index < 100_000; ++index) {
+        piano.keyPressLater(3);
+        piano.keyReleaseLater(3);
+      }
+      piano.keyPressLater(4);
+    });
+    thread.start();
+    thread.join();
+    robot.waitForFrames(10);
+
+    assertFalse(piano.keyIsPressed(3));
+    assertTrue(piano.keyIsPressed(4));
+
+    final var presses =
+      this.events.stream()
+        .filter(e -> e.equals(new IvKeyPressed(3, true)))
+        .count();
+    final var releases =
+      this.events.stream()
+        .filter(e -> e.equals(new IvKeyReleased(3, true)))
+        .count();
+
+    assertTrue(presses >= 1L);
+    assertTrue(presses < 100_000L);
+    assertEquals(presses, releases);
+  }
+
+  /**
+   * Submitting far more events than the queue can hold from the FX thread
+   * itself neither blocks nor loses the final state of any key.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoKeyPressLaterOverflowOnFX(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+
+    robot.execute(() -> {
+      for (int index = 0; index < 100_000; ++index) {
+        piano.keyPressLater(3);
+        piano.keyReleaseLater(3);
+      }
+      piano.keyPressLater(4);
+      piano.keyPressLater(5);
+      piano.keyReleaseLater(5);
+    });
+    robot.waitForFrames(10);
+
+    assertFalse(piano.keyIsPressed(3));
+    assertTrue(piano.keyIsPressed(4));
+    assertFalse(piano.keyIsPressed(5));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.internal.IvKeyPressedSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class IvKeyPressedSetTest
+{
+  /**
+   * A bulk change started from a listener during another bulk change is
+   * rejected, and the outer change completes as if it had not happened.
+   */
+
+  @Test
+  public void testBulkReentrancyRejected()
+  {
+    final var failures = new ArrayList<Exception>();
+    final var setRef = new IvKeyPressedSet[1];
+
+    final var set = new IvKeyPressedSet(128, (index, pressed, synth) -> {
+      if (index == 3 && pressed) {
+        try {
+          setRef[0].releaseAll(new int[]{3, 70});
+        } catch (final Exception e) {
+          failures.add(e);
+        }
+        try {
+          setRef[0].pressAll(new int[]{100}, true);
+        } catch (final Exception e) {
+          failures.add(e);
+        }
+        try {
+          setRef[0].setPressed(new BitSet(), true);
+        } catch (final Exception e) {
+          failures.add(e);
+        }
+      }
+    });
+    setRef[0] = set;
+
+    final var keys = new BitSet();
+    keys.set(3);
+    keys.set(70);
+    keys.set(127);
+    set.setPressed(keys, true);
+
+    assertEquals(3, failures.size());
+    for (final var failure : failures) {
+      assertInstanceOf(IllegalStateException.class, failure);
+    }
+
+    assertEquals(3, set.pressedCount());
+    assertTrue(set.isPressed(3));
+    assertTrue(set.isPressed(70));
+    assertTrue(set.isPressed(127));
+    assertFalse(set.isPressed(100));
+
+    final var view = set.view();
+    assertTrue(view.isPressed(3));
+    assertTrue(view.isPressed(70));
+    assertTrue(view.isPressed(127));
+    assertFalse(view.isPressed(100));
+
+    set.releaseAll(new int[]{3, 70, 127});
+    assertEquals(0, set.pressedCount());
+    assertFalse(view.isPressed(70));
+  }
+
+  /**
+   * Single presses and releases from a listener during a bulk change are
+   * permitted.
+   */
+
+  @Test
+  public void testSingleChangesDuringBulk()
+  {
+    final var setRef = new IvKeyPressedSet[1];
+    final var set = new IvKeyPressedSet(128, (index, pressed, synth) -> {
+      if (index == 5 && pressed) {
+        setRef[0].press(9, false);
+        setRef[0].press(90, false);
+      }
+    });
+    setRef[0] = set;
+    set.press(8, false);
+
+    final var keys = new BitSet();
+    keys.set(5);
+    keys.set(6);
+    set.setPressed(keys, true);
+
+    assertTrue(set.isPressed(5));
+    assertTrue(set.isPressed(6));
+    assertFalse(set.isPressed(8));
+    assertTrue(set.isPressed(9));
+    assertTrue(set.isPressed(90));
+    assertTrue(set.view().isPressed(9));
+    assertTrue(set.view().isPressed(90));
+    assertEquals(4, set.pressedCount());
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvKeySet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class IvKeySetTest
+{
+  /**
+   * The empty set is empty.
+   */
+
+  @Test
+  public void testEmpty()
+  {
+    final var s = IvKeySet.empty();
+    assertTrue(s.isEmpty());
+    assertEquals(0, s.size());
+    assertEquals(-1, s.lowest());
+    assertEquals(-1, s.highest());
+    assertFalse(s.contains(0));
+    assertFalse(s.contains(-1));
+    assertSame(s, IvKeySet.ofWords(new long[4]));
+  }
+
+  /**
+   * Sets report their contents and extrema correctly.
+   */
+
+  @Test
+  public void testContents()
+  {
+    final var bits = new BitSet();
+    bits.set(0);
+    bits.set(63);
+    bits.set(64);
+    bits.set(144);
+
+    final var s = IvKeySet.ofBitSet(bits);
+    assertEquals(4, s.size());
+    assertEquals(0, s.lowest());
+    assertEquals(144, s.highest());
+    assertTrue(s.contains(63));
+    assertTrue(s.contains(64));
+    assertFalse(s.contains(65));
+    assertFalse(s.contains(1024));
+    assertEquals(bits, s.toBitSet());
+
+    final var seen = new ArrayList<Integer>();
+    s.forEach(seen::add);
+    assertEquals(List.of(0, 63, 64, 144), seen);
+  }
+
+  /**
+   * Sets with the same contents are equal.
+   */
+
+  @Test
+  public void testEquals()
+  {
+    final var s0 = IvKeySet.ofWords(new long[]{1L, 0L, 0L});
+    final var s1 = IvKeySet.ofWords(new long[]{1L});
+    assertEquals(s0, s1);
+    assertEquals(s0.hashCode(), s1.hashCode());
+  }
+}
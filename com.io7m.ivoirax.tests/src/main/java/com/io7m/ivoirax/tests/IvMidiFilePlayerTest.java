@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.ivoirax.midi.IvMidiFilePlayer;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(XoExtension.class)
+public final class IvMidiFilePlayerTest
+{
+  private List<IvKeyEventType> events;
+
+  private void eventContains(
+    final IvKeyEventType e)
+  {
+    assertTrue(
+      this.events.contains(e),
+      "Events must contain %s".formatted(e)
+    );
+  }
+
+  private void eventIsBefore(
+    final IvKeyEventType e0,
+    final IvKeyEventType e1)
+  {
+    assertTrue(
+      this.events.indexOf(e0) < this.events.indexOf(e1),
+      "Event %s must be before event %s".formatted(e0, e1)
+    );
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.events = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  /**
+   * MIDI sequences play on the piano, and seeking restores the pressed
+   * state at the target time.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMidiFilePlayer(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    /*
+     * 480 ticks per quarter note at the default 120 BPM is 960 ticks per
+     * second. Two tracks hold overlapping notes on key 12, which must be
+     * merged into a single press and release.
+     */
+
+    final var sequence = new Sequence(Sequence.PPQ, 480);
+    final var track0 = sequence.createTrack();
+    final var track1 = sequence.createTrack();
+    for (int index = 0; index < 20; ++index) {
+      final var tick = index * 24L;
+      track0.add(new MidiEvent(
+        new ShortMessage(ShortMessage.NOTE_ON, 0, 60 + index, 100), tick));
+      track0.add(new MidiEvent(
+        new ShortMessage(ShortMessage.NOTE_ON, 0, 60 + index, 0), tick + 12L));
+    }
+    track0.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 1, 72, 100), 0L));
+    track1.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 2, 72, 100), 96L));
+    track0.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_OFF, 1, 72, 0), 192L));
+    track1.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_OFF, 2, 72, 0), 960L));
+    track1.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 2, 20, 100), 0L));
+
+    /*
+     * Key 25 is retriggered on one channel without an intervening
+     * NOTE_OFF, so the single NOTE_OFF must still release it.
+     */
+
+    track0.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 0, 85, 100), 0L));
+    track1.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 0, 85, 100), 48L));
+    track0.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_OFF, 0, 85, 0), 96L));
+
+    final var player =
+      IvMidiFilePlayer.create(
+        piano, sequence, 60, IvMidiFilePlayer.LOOK_AHEAD_DEFAULT);
+
+    assertEquals(42, player.changeCount());
+    assertEquals(Duration.ofSeconds(1L), player.duration());
+
+    player.seek(Duration.ofMillis(155L));
+    robot.waitForFrames(2);
+    assertTrue(piano.keyIsPressed(12));
+    assertFalse(piano.keyIsPressed(25));
+    assertFalse(piano.keyIsPressed(5));
+    assertTrue(piano.keyIsPressed(6));
+    assertFalse(piano.keyIsPressed(7));
+
+    player.seek(Duration.ZERO);
+    robot.waitForFrames(2);
+    this.events.clear();
+
+    player.start().get(10L, TimeUnit.SECONDS);
+    robot.waitForFrames(2);
+
+    for (int index = 0; index < 20; ++index) {
+      assertFalse(piano.keyIsPressed(index));
+      final var pressed = new IvKeyPressed(index, true);
+      final var released = new IvKeyReleased(index, true);
+      this.eventContains(pressed);
+      this.eventContains(released);
+      this.eventIsBefore(pressed, released);
+    }
+    assertEquals(
+      1L,
+      this.events.stream()
+        .filter(e -> e.equals(new IvKeyPressed(12, true)))
+        .count()
+    );
+    assertFalse(piano.keyIsPressed(25));
+    this.eventIsBefore(
+      new IvKeyPressed(25, true), new IvKeyReleased(25, true));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.midi.IvMidiFileRecorder;
+import com.io7m.ivoirax.midi.IvMidiFileRecorderConfiguration;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(XoExtension.class)
+public final class IvMidiFileRecorderTest
+{
+  /**
+   * Key presses and releases are recorded to a Standard MIDI File.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMidiFileRecorder(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var file = Files.createTempFile("ivoirax-", ".mid");
+    final var recorderRef = new AtomicReference<IvMidiFileRecorder>();
+
+    robot.execute(() -> {
+      recorderRef.set(IvMidiFileRecorder.create(
+        piano, new IvMidiFileRecorderConfiguration(1, 90, 60, 500_000, 480)));
+    });
+
+    final var recorder = recorderRef.get();
+    for (int index = 0; index < 4; ++index) {
+      final var key = index;
+      robot.execute(() -> piano.keyPress(key));
+      robot.waitForFrames(6);
+      robot.execute(() -> piano.keyRelease(key));
+      robot.waitForFrames(6);
+    }
+    robot.execute(() -> {
+      piano.keyPress(100);
+      piano.keyPress(10);
+      recorder.close();
+      try {
+        recorder.write(file);
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    robot.execute(() -> piano.keyRelease(10));
+
+    assertEquals(9, recorder.noteEventCount());
+
+    final var sequence = MidiSystem.getSequence(file.toFile());
+    assertEquals(Sequence.PPQ, sequence.getDivisionType());
+    assertEquals(480, sequence.getResolution());
+    assertEquals(1, sequence.getTracks().length);
+
+    final var notes = new ArrayList<ShortMessage>();
+    final var ticks = new ArrayList<Long>();
+    final var track = sequence.getTracks()[0];
+    for (int index = 0; index < track.size(); ++index) {
+      final var event = track.get(index);
+      if (event.getMessage() instanceof final ShortMessage message) {
+        notes.add(message);
+        ticks.add(Long.valueOf(event.getTick()));
+      }
+    }
+
+    assertEquals(10, notes.size());
+    for (int index = 0; index < 4; ++index) {
+      final var on = notes.get(index * 2);
+      final var off = notes.get((index * 2) + 1);
+      assertEquals(ShortMessage.NOTE_ON, on.getCommand());
+      assertEquals(1, on.getChannel());
+      assertEquals(60 + index, on.getData1());
+      assertEquals(90, on.getData2());
+      assertEquals(60 + index, off.getData1());
+      assertEquals(0, off.getData2());
+      assertTrue(
+        ticks.get((index * 2) + 1).longValue() > ticks.get(index * 2));
+    }
+    assertEquals(70, notes.get(8).getData1());
+    assertEquals(90, notes.get(8).getData2());
+    assertEquals(70, notes.get(9).getData1());
+    assertEquals(0, notes.get(9).getData2());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new IvMidiFileRecorderConfiguration(0, 90, 0, 500_000, 0x8000);
+    });
+  }
+}
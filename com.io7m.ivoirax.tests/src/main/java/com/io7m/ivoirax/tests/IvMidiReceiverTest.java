@@ -0,0 +1,242 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyPressed;
+import com.io7m.ivoirax.core.IvKeyReleased;
+import com.io7m.ivoirax.midi.IvMidiReceiver;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(XoExtension.class)
+public final class IvMidiReceiverTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvMidiReceiverTest.class);
+
+  private List<IvKeyEventType> events;
+
+  private void eventContains(
+    final IvKeyEventType e)
+  {
+    assertTrue(
+      this.events.contains(e),
+      "Events must contain %s".formatted(e)
+    );
+  }
+
+  private void eventIsBefore(
+    final IvKeyEventType e0,
+    final IvKeyEventType e1)
+  {
+    assertTrue(
+      this.events.indexOf(e0) < this.events.indexOf(e1),
+      "Event %s must be before event %s".formatted(e0, e1)
+    );
+  }
+
+  private void dumpEvents()
+  {
+    this.events.forEach(event -> LOG.debug("Event: {}", event));
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.events = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  /**
+   * MIDI note messages press and release keys.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMidiReceiver(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    try (var receiver = new IvMidiReceiver(piano, 60)) {
+      assertEquals(60, receiver.noteOffset());
+
+      final var thread = new Thread(() -> {
+        try {
+          receiver.send(
+            new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), -1L);
+          receiver.send(
+            new ShortMessage(ShortMessage.NOTE_ON, 3, 62, 100), -1L);
+          receiver.send(
+            new ShortMessage(ShortMessage.NOTE_ON, 0, 64, 100), -1L);
+          receiver.send(
+            new ShortMessage(ShortMessage.NOTE_OFF, 3, 62, 0), -1L);
+          receiver.send(
+            new ShortMessage(ShortMessage.NOTE_ON, 0, 64, 0), -1L);
+          receiver.send(
+            new ShortMessage(ShortMessage.NOTE_ON, 0, 59, 100), -1L);
+          receiver.send(
+            new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 65, 100), -1L);
+        } catch (final InvalidMidiDataException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      thread.start();
+      thread.join();
+      robot.waitForFrames(60);
+    }
+
+    assertTrue(piano.keyIsPressed(0));
+    assertFalse(piano.keyIsPressed(2));
+    assertFalse(piano.keyIsPressed(4));
+    assertFalse(piano.keyIsPressed(5));
+
+    final var kp2 = new IvKeyPressed(2, true);
+    final var kr2 = new IvKeyReleased(2, true);
+    final var kp4 = new IvKeyPressed(4, true);
+    final var kr4 = new IvKeyReleased(4, true);
+
+    this.dumpEvents();
+    this.eventContains(new IvKeyPressed(0, true));
+    this.eventContains(kp2);
+    this.eventContains(kr2);
+    this.eventContains(kp4);
+    this.eventContains(kr4);
+    this.eventIsBefore(kp2, kr2);
+    this.eventIsBefore(kp4, kr4);
+  }
+
+  /**
+   * A note held on one channel is not released by a release of the same
+   * note on another channel, and is released once every channel holding it
+   * has released it.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMidiReceiverChannels(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+
+    try (var receiver = new IvMidiReceiver(piano, 24)) {
+      receiver.send(
+        new ShortMessage(ShortMessage.NOTE_ON, 1, 26, 100), -1L);
+      receiver.send(
+        new ShortMessage(ShortMessage.NOTE_ON, 2, 26, 100), -1L);
+      receiver.send(
+        new ShortMessage(ShortMessage.NOTE_ON, 2, 26, 100), -1L);
+      receiver.send(
+        new ShortMessage(ShortMessage.NOTE_OFF, 2, 26, 0), -1L);
+      receiver.send(
+        new ShortMessage(ShortMessage.NOTE_OFF, 3, 26, 0), -1L);
+      robot.waitForFrames(10);
+
+      assertTrue(piano.keyIsPressed(2));
+
+      receiver.send(
+        new ShortMessage(ShortMessage.NOTE_ON, 1, 26, 0), -1L);
+      robot.waitForFrames(10);
+
+      assertFalse(piano.keyIsPressed(2));
+    }
+
+    this.dumpEvents();
+    assertEquals(
+      List.of(new IvKeyPressed(2, true), new IvKeyReleased(2, true)),
+      this.events
+    );
+  }
+
+  /**
+   * A note offset that does not correspond to a C is rejected.
+   *
+   * @param commander The commander
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMidiReceiverOffsetNotC(
+    final XCCommanderType commander)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new IvMidiReceiver(piano, 21));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new IvMidiReceiver(piano, -1));
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.ivoirax.tests;
+
+import com.io7m.ivoirax.core.IvHorizontalPiano;
+import com.io7m.ivoirax.midi.IvMidiTransmitter;
+import com.io7m.ivoirax.midi.IvMidiTransmitterConfiguration;
+import com.io7m.xoanon.commander.api.XCCommanderType;
+import com.io7m.xoanon.commander.api.XCRobotType;
+import com.io7m.xoanon.extension.XoExtension;
+import javafx.scene.Scene;
+import javafx.scene.input.MouseButton;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(XoExtension.class)
+public final class IvMidiTransmitterTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IvMidiTransmitterTest.class);
+
+  private static void clickKey(
+    final XCRobotType robot,
+    final IvHorizontalPiano piano,
+    final int index)
+    throws Exception
+  {
+    robot.evaluate(() -> {
+      final var x =
+        piano.xPositionCenterOf(index);
+      final var position =
+        piano.localToScreen(x, 16.0);
+
+      robot.robot().mouseMove(position);
+      return null;
+    });
+
+    robot.execute(() -> {
+      robot.robot().mousePress(MouseButton.PRIMARY);
+    });
+    robot.waitForFrames(60);
+
+    /*
+     * Releasing the second button does nothing.
+     */
+
+    robot.execute(() -> {
+      robot.robot().mouseRelease(MouseButton.SECONDARY);
+    });
+    robot.waitForFrames(60);
+
+    robot.execute(() -> {
+      robot.robot().mouseRelease(MouseButton.PRIMARY);
+    });
+    robot.waitForFrames(60);
+  }
+
+  /**
+   * Key presses and releases are sent as MIDI note messages, synchronously
+   * with the input event that caused them.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMidiTransmitter(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvHorizontalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view = new IvHorizontalPiano();
+      pianoView.set(view);
+      newStage.setScene(new Scene(view));
+    });
+
+    final var piano = pianoView.get();
+    final var messages =
+      Collections.synchronizedList(new ArrayList<ShortMessage>());
+    final var sendTimes =
+      Collections.synchronizedList(new ArrayList<Long>());
+
+    final var receiver = new Receiver()
+    {
+      @Override
+      public void send(
+        final MidiMessage message,
+        final long timeStamp)
+      {
+        sendTimes.add(Long.valueOf(System.nanoTime()));
+        messages.add((ShortMessage) message.clone());
+      }
+
+      @Override
+      public void close()
+      {
+
+      }
+    };
+
+    try (var transmitter = IvMidiTransmitter.create(
+      piano, new IvMidiTransmitterConfiguration(2, 90, 60, true))) {
+      transmitter.setReceiver(receiver);
+      assertEquals(receiver, transmitter.getReceiver());
+
+      clickKey(robot, piano, 5);
+      robot.execute(() -> {
+        piano.keyPress(7);
+        piano.keyRelease(7);
+      });
+      robot.waitForFrames(60);
+
+      assertEquals(2, messages.size());
+      final var on = messages.get(0);
+      assertEquals(ShortMessage.NOTE_ON, on.getCommand());
+      assertEquals(2, on.getChannel());
+      assertEquals(65, on.getData1());
+      assertEquals(90, on.getData2());
+      final var off = messages.get(1);
+      assertEquals(ShortMessage.NOTE_OFF, off.getCommand());
+      assertEquals(2, off.getChannel());
+      assertEquals(65, off.getData1());
+    }
+
+    messages.clear();
+    sendTimes.clear();
+
+    try (var transmitter = IvMidiTransmitter.create(
+      piano, IvMidiTransmitterConfiguration.defaults())) {
+      transmitter.setReceiver(receiver);
+
+      final var times = new long[2];
+      robot.execute(() -> {
+        times[0] = System.nanoTime();
+        piano.keyPress(7);
+        times[1] = System.nanoTime();
+      });
+
+      assertEquals(1, messages.size());
+      assertEquals(7, messages.get(0).getData1());
+
+      final var timeSent = sendTimes.get(0).longValue();
+      assertTrue(timeSent >= times[0]);
+      assertTrue(timeSent <= times[1]);
+      LOG.debug("Key press to MIDI send latency: {} ns", timeSent - times[0]);
+    }
+
+    robot.execute(() -> piano.keyRelease(7));
+    robot.waitForFrames(60);
+    assertEquals(1, messages.size());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new IvMidiTransmitterConfiguration(16, 90, 0, false);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new IvMidiTransmitterConfiguration(0, 0, 0, false);
+    });
+  }
+}
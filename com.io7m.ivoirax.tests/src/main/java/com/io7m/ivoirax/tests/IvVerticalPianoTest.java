@@ -19,6 +19,7 @@ package com.io7m.ivoirax.tests;
 
 import com.io7m.ivoirax.core.IvKeyEnter;
 import com.io7m.ivoirax.core.IvKeyEventType;
+import com.io7m.ivoirax.core.IvKeyMaterialization;
 import com.io7m.ivoirax.core.IvKeyPressed;
 import com.io7m.ivoirax.core.IvKeyReleased;
 import com.io7m.ivoirax.core.IvVerticalPiano;
@@ -26,6 +27,7 @@ import com.io7m.xoanon.commander.api.XCCommanderType;
 import com.io7m.xoanon.commander.api.XCRobotType;
 import com.io7m.xoanon.extension.XoExtension;
 import javafx.scene.Scene;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
 import org.junit.jupiter.api.BeforeEach;
@@ -756,4 +758,59 @@ public final class IvVerticalPianoTest
       assertTrue(e.isSynthesized());
     }
   }
+
+  /**
+   * Keys that do not currently have nodes behave as any other key.
+   *
+   * @param commander The commander
+   * @param robot     The robot
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPianoMaterializeVisible(
+    final XCCommanderType commander,
+    final XCRobotType robot)
+    throws Exception
+  {
+    final var pianoView = new AtomicReference<IvVerticalPiano>();
+    commander.stageNewAndWait(newStage -> {
+      final var view =
+        new IvVerticalPiano(145, IvKeyMaterialization.MATERIALIZE_VISIBLE);
+      final var scroll = new ScrollPane(view);
+      scroll.setPrefViewportHeight(320.0);
+      scroll.setFitToWidth(true);
+      pianoView.set(view);
+      newStage.setScene(new Scene(scroll));
+    });
+
+    final var piano = pianoView.get();
+    piano.setOnKeyEventHandler(this.events::add);
+    assertEquals(24.0 * 84.0, piano.yPositionOf(0));
+
+    robot.execute(() -> {
+      piano.keyPress(140);
+    });
+    assertTrue(piano.keyIsPressed(140));
+    robot.execute(() -> {
+      piano.keyRelease(140);
+    });
+    assertFalse(piano.keyIsPressed(140));
+
+    clickKey(robot, piano, 7);
+
+    final var kp0 = new IvKeyPressed(140, true);
+    final var kr0 = new IvKeyReleased(140, true);
+    final var kp1 = new IvKeyPressed(7, false);
+    final var kr1 = new IvKeyReleased(7, false);
+
+    this.dumpEvents();
+    this.eventContains(kp0);
+    this.eventContains(kr0);
+    this.eventContains(kp1);
+    this.eventContains(kr1);
+    this.eventIsBefore(kp0, kr0);
+    this.eventIsBefore(kp1, kr1);
+  }
 }
@@ -28,6 +28,7 @@ open module com.io7m.ivoirax.tests
   requires org.junit.platform.commons;
   requires org.junit.platform.engine;
   requires org.junit.platform.launcher;
+  requires net.jqwik.api;
 
   requires com.io7m.xoanon.commander.api;
   requires com.io7m.xoanon.commander;
@@ -36,6 +37,7 @@ open module com.io7m.ivoirax.tests
   requires javafx.controls;
   requires javafx.graphics;
   requires com.io7m.ivoirax.core;
+  requires com.io7m.ivoirax.midi;
   requires org.slf4j;
 
   exports com.io7m.ivoirax.tests;